@@ -1,106 +1,4466 @@
 import java.util.*;
 import java.io.*;
+import java.lang.invoke.*;
+import java.lang.ref.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
 import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.time.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import java.util.regex.*;
+import java.util.zip.*;
+import javax.crypto.*;
+import javax.crypto.spec.*;
+
+final class ConfigSnapshot {
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyMap(), false, null, null, Collections.emptyList(), 0);
+
+    private final Map<String, String> source;
+    private final Map<String, String> settings;
+    private final boolean loaded;
+    private final long version;
+    private final ConcurrentHashMap<String, ParsedValue> parsed = new ConcurrentHashMap<>();
+    private final Object[] slots;
+    private final boolean live;
+    private volatile String[] sortedKeys;
+    private String[] baseKeys;
+    private Set<String> touchedKeys;
+    private final ConcurrentHashMap<String, Optional<String>> present = new ConcurrentHashMap<>();
+
+    ConfigSnapshot(Map<String, String> settings, boolean loaded, ConfigSnapshot previous, ConfigDelta delta,
+                   List<ConfigKey<?>> keys, long version) {
+        this.source = settings;
+        this.settings = Collections.unmodifiableMap(settings);
+        this.loaded = loaded;
+        this.version = version;
+        if (previous != null) {
+            for (Map.Entry<String, ParsedValue> entry : previous.parsed.entrySet()) {
+                if (entry.getValue().raw.equals(settings.get(entry.getKey()))) {
+                    parsed.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        this.live = settings instanceof SharedConfigSegment.LiveView;
+        if (previous != null && delta != null && !live) {
+            inheritSortedKeys(previous, delta);
+        }
+        this.slots = new Object[live ? 0 : keys.size()];
+        for (ConfigKey<?> key : live ? Collections.<ConfigKey<?>>emptyList() : keys) {
+            String raw = settings.get(key.getName());
+            if (raw != null && !ConfigSecrets.isEncrypted(raw)) {
+                try {
+                    slots[key.getSlot()] = getParsed(key.getName(), raw, key.getType(), key.getParser());
+                } catch (RuntimeException e) {
+                    slots[key.getSlot()] = new SlotFailure(raw, e);
+                }
+            }
+        }
+    }
+
+    public Map<String, String> getSettings() { return settings; }
+    public boolean isLoaded() { return loaded; }
+    public long getVersion() { return version; }
+    boolean isLive() { return live; }
+
+    Map<String, String> getSource() { return source; }
+
+    public String getSetting(String key) {
+        if (!loaded) {
+            throw new IllegalStateException("Конфигурация жүктелмеген!");
+        }
+        String value = settings.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Орнатылмаған параметр: " + key);
+        }
+        return value;
+    }
+
+    public String getSetting(String key, String defaultValue) {
+        if (!loaded) return defaultValue;
+        return settings.getOrDefault(key, defaultValue);
+    }
+
+    public String getSettingOrElse(String key, Supplier<String> fallback) {
+        String value = loaded ? source.get(key) : null;
+        return value != null ? value : fallback.get();
+    }
+
+    public Optional<String> findSetting(String key) {
+        if (!loaded) {
+            return Optional.empty();
+        }
+        Optional<String> cached = present.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        String value = source.get(key);
+        if (value == null) {
+            return Optional.empty();
+        }
+        Optional<String> created = Optional.of(value);
+        Optional<String> raced = present.putIfAbsent(key, created);
+        return raced != null ? raced : created;
+    }
+
+    public Map<String, String> getByPrefix(String prefix, boolean stripPrefix) {
+        String[] keys = sortedKeys();
+        int index = Arrays.binarySearch(keys, prefix);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (; index < keys.length && keys[index].startsWith(prefix); index++) {
+            String key = keys[index];
+            result.put(stripPrefix ? key.substring(prefix.length()) : key, settings.get(key));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private String[] sortedKeys() {
+        String[] keys = sortedKeys;
+        if (keys != null) {
+            return keys;
+        }
+        if (live) {
+            keys = settings.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            return keys;
+        }
+        synchronized (this) {
+            if (sortedKeys == null) {
+                if (baseKeys != null) {
+                    keys = patchKeys(baseKeys, touchedKeys);
+                } else {
+                    keys = settings.keySet().toArray(new String[0]);
+                    Arrays.sort(keys);
+                }
+                sortedKeys = keys;
+                baseKeys = null;
+                touchedKeys = null;
+            }
+            return sortedKeys;
+        }
+    }
+
+    private void inheritSortedKeys(ConfigSnapshot previous, ConfigDelta delta) {
+        synchronized (previous) {
+            String[] keys = previous.sortedKeys;
+            Set<String> touched = new HashSet<>();
+            if (keys == null) {
+                keys = previous.baseKeys;
+                if (keys == null) {
+                    return;
+                }
+                touched.addAll(previous.touchedKeys);
+            }
+            touched.addAll(delta.getAdded().keySet());
+            touched.addAll(delta.getRemoved());
+            if (touched.size() > keys.length / 4 + 16) {
+                return;
+            }
+            baseKeys = keys;
+            touchedKeys = touched;
+        }
+    }
+
+    private String[] patchKeys(String[] base, Set<String> touched) {
+        List<String> added = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+        for (String key : touched) {
+            boolean before = Arrays.binarySearch(base, key) >= 0;
+            boolean after = source.containsKey(key);
+            if (after && !before) {
+                added.add(key);
+            } else if (before && !after) {
+                removed.add(key);
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return base;
+        }
+        Collections.sort(added);
+        String[] keys = new String[base.length - removed.size() + added.size()];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < base.length || j < added.size()) {
+            if (j == added.size() || (i < base.length && base[i].compareTo(added.get(j)) < 0)) {
+                if (!removed.contains(base[i])) {
+                    keys[k++] = base[i];
+                }
+                i++;
+            } else {
+                keys[k++] = added.get(j++);
+            }
+        }
+        return keys;
+    }
+
+    Object getSlot(int slot) {
+        return slot < slots.length ? slots[slot] : null;
+    }
+
+    boolean hasSlot(int slot) {
+        return slot < slots.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T getParsed(String key, String raw, Class<?> type, Function<String, T> parser) {
+        ParsedValue cached = parsed.get(key);
+        if (cached != null && cached.type == type && cached.raw.equals(raw)) {
+            return (T) cached.value;
+        }
+        T value = parser.apply(raw);
+        parsed.put(key, new ParsedValue(raw, type, value));
+        return value;
+    }
+
+    void prime(String key, Class<?> type, Object value) {
+        String raw = source.get(key);
+        if (raw != null) {
+            parsed.put(key, new ParsedValue(raw, type, value));
+        }
+    }
+
+    static final class SlotFailure {
+        final String raw;
+        final RuntimeException cause;
+
+        SlotFailure(String raw, RuntimeException cause) {
+            this.raw = raw;
+            this.cause = cause;
+        }
+    }
+
+    private static final class ParsedValue {
+        final String raw;
+        final Class<?> type;
+        final Object value;
+
+        ParsedValue(String raw, Class<?> type, Object value) {
+            this.raw = raw;
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
+
+final class ConfigKey<T> {
+    private final String name;
+    private final Class<T> type;
+    private final Function<String, T> parser;
+    private final int slot;
+
+    ConfigKey(String name, Class<T> type, Function<String, T> parser, int slot) {
+        this.name = name;
+        this.type = type;
+        this.parser = parser;
+        this.slot = slot;
+    }
+
+    public String getName() { return name; }
+    public Class<T> getType() { return type; }
+    Function<String, T> getParser() { return parser; }
+    int getSlot() { return slot; }
+
+    @Override
+    public String toString() {
+        return name + " (" + type.getSimpleName() + ")";
+    }
+}
+
+class ConfigParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int lineNumber;
+
+    public ConfigParseException(String message, int lineNumber) {
+        super(message + " (жол " + lineNumber + ")");
+        this.lineNumber = lineNumber;
+    }
+
+    public int getLineNumber() { return lineNumber; }
+}
+
+final class ConfigFileParser {
+    private ConfigFileParser() {
+    }
+
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    public static Map<String, String> parse(Path path) throws IOException {
+        ByteBuffer buffer = map(path);
+        Map<String, String> settings = new HashMap<>();
+        parse(buffer, 0, buffer.limit(), settings);
+        return settings;
+    }
+
+    public static Map<String, String> parseParallel(Path path, ForkJoinPool pool) throws IOException {
+        ByteBuffer buffer = map(path);
+        int size = buffer.limit();
+        int chunkCount = Math.min(pool.getParallelism() * 4, size / MIN_CHUNK_SIZE);
+        if (chunkCount < 2) {
+            Map<String, String> settings = new HashMap<>();
+            parse(buffer, 0, size, settings);
+            return settings;
+        }
+
+        List<ChunkTask> tasks = new ArrayList<>();
+        int chunkStart = 0;
+        for (int i = 1; i <= chunkCount && chunkStart < size; i++) {
+            int chunkEnd = i == chunkCount ? size : nextLineStart(buffer, (int) ((long) size * i / chunkCount), size);
+            if (chunkEnd > chunkStart) {
+                tasks.add(new ChunkTask(buffer, chunkStart, chunkEnd));
+                chunkStart = chunkEnd;
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        int total = 0;
+        for (ChunkTask task : tasks) {
+            if (task.error != null) throw task.error;
+            total += task.result.size();
+        }
+        Map<String, String> settings = new HashMap<>(total * 4 / 3 + 1);
+        for (ChunkTask task : tasks) {
+            settings.putAll(task.result);
+        }
+        return settings;
+    }
+
+    public static LazyConfigMap parseLazily(Path path) throws IOException {
+        ByteBuffer buffer = map(path);
+        Map<String, List<int[]>> ranges = new HashMap<>();
+        boolean references = false;
+        byte[] scratch = new byte[128];
+        String section = null;
+        int sectionStart = -1;
+        int sectionFrom = 0;
+        int sectionTo = 0;
+        int to = buffer.limit();
+        int pos = 0;
+        while (pos < to) {
+            int lineStart = pos;
+            int separator = -1;
+            while (pos < to) {
+                byte b = buffer.get(pos);
+                if (b == '\n') break;
+                if (b == '=' && separator < 0) separator = pos;
+                if (b == '{' && pos > lineStart && buffer.get(pos - 1) == '$') references = true;
+                pos++;
+            }
+            int lineEnd = pos++;
+            int contentStart = skipWhitespace(buffer, lineStart, lineEnd);
+            if (contentStart == lineEnd || buffer.get(contentStart) == '#') {
+                continue;
+            }
+            if (separator < 0) {
+                warnSkipped(buffer, lineStart);
+                continue;
+            }
+            int keyStart = skipWhitespace(buffer, lineStart, separator);
+            int keyEnd = trimEnd(buffer, keyStart, separator);
+            if (keyStart == keyEnd) {
+                throw new ConfigParseException("Бос кілт", lineNumber(buffer, lineStart));
+            }
+            int nameEnd = keyStart;
+            while (nameEnd < keyEnd && buffer.get(nameEnd) != '.') nameEnd++;
+            if (section == null || !sameBytes(buffer, sectionFrom, sectionTo, keyStart, nameEnd)) {
+                if (section != null) {
+                    ranges.computeIfAbsent(section, name -> new ArrayList<>()).add(new int[] {sectionStart, lineStart});
+                }
+                if (scratch.length < nameEnd - keyStart) {
+                    scratch = new byte[Math.max(scratch.length * 2, nameEnd - keyStart)];
+                }
+                section = decode(buffer, keyStart, nameEnd, scratch);
+                sectionStart = lineStart;
+                sectionFrom = keyStart;
+                sectionTo = nameEnd;
+            }
+        }
+        if (section != null) {
+            ranges.computeIfAbsent(section, name -> new ArrayList<>()).add(new int[] {sectionStart, to});
+        }
+        return new LazyConfigMap(buffer, ranges, references);
+    }
+
+    private static boolean sameBytes(ByteBuffer buffer, int from, int to, int otherFrom, int otherTo) {
+        if (to - from != otherTo - otherFrom) return false;
+        for (int i = 0; i < to - from; i++) {
+            if (buffer.get(from + i) != buffer.get(otherFrom + i)) return false;
+        }
+        return true;
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Файл тым үлкен: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private static int nextLineStart(ByteBuffer buffer, int from, int to) {
+        while (from < to) {
+            if (buffer.get(from++) == '\n') break;
+        }
+        return from;
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private Map<String, String> result;
+        private ConfigParseException error;
+
+        ChunkTask(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            Map<String, String> chunk = new HashMap<>();
+            try {
+                parse(buffer, from, to, chunk);
+                result = chunk;
+            } catch (ConfigParseException e) {
+                error = e;
+            }
+        }
+    }
+
+    public static void parse(ByteBuffer buffer, int from, int to, Map<String, String> sink) throws ConfigParseException {
+        parse(buffer, from, to, sink, true);
+    }
+
+    static void parse(ByteBuffer buffer, int from, int to, Map<String, String> sink, boolean warn) throws ConfigParseException {
+        byte[] scratch = new byte[128];
+        int pos = from;
+        while (pos < to) {
+            int lineStart = pos;
+            int separator = -1;
+            while (pos < to) {
+                byte b = buffer.get(pos);
+                if (b == '\n') break;
+                if (b == '=' && separator < 0) separator = pos;
+                pos++;
+            }
+            int lineEnd = pos++;
+            int contentStart = skipWhitespace(buffer, lineStart, lineEnd);
+            if (contentStart == lineEnd || buffer.get(contentStart) == '#') {
+                continue;
+            }
+            if (separator < 0) {
+                if (warn) {
+                    warnSkipped(buffer, lineStart);
+                }
+                continue;
+            }
+            int keyStart = skipWhitespace(buffer, lineStart, separator);
+            int keyEnd = trimEnd(buffer, keyStart, separator);
+            if (keyStart == keyEnd) {
+                throw new ConfigParseException("Бос кілт", lineNumber(buffer, lineStart));
+            }
+            int valueStart = skipWhitespace(buffer, separator + 1, lineEnd);
+            int valueEnd = trimEnd(buffer, valueStart, lineEnd);
+            if (scratch.length < lineEnd - lineStart) {
+                scratch = new byte[Math.max(scratch.length * 2, lineEnd - lineStart)];
+            }
+            sink.put(decode(buffer, keyStart, keyEnd, scratch), decode(buffer, valueStart, valueEnd, scratch));
+        }
+    }
+
+    private static void warnSkipped(ByteBuffer buffer, int lineStart) {
+        System.err.println("'=' таңбасы жоқ жол өткізілді (жол " + lineNumber(buffer, lineStart) + ")");
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+        while (from < to && (buffer.get(from) & 0xFF) <= ' ') from++;
+        return from;
+    }
+
+    private static int trimEnd(ByteBuffer buffer, int from, int to) {
+        while (to > from && (buffer.get(to - 1) & 0xFF) <= ' ') to--;
+        return to;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to, byte[] scratch) {
+        int length = to - from;
+        buffer.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int lineNumber(ByteBuffer buffer, int offset) {
+        int line = 1;
+        for (int i = 0; i < offset; i++) {
+            if (buffer.get(i) == '\n') line++;
+        }
+        return line;
+    }
+}
+
+final class LazyConfigMap extends AbstractMap<String, String> {
+    private final ByteBuffer buffer;
+    private final Map<String, List<int[]>> sections;
+    private final boolean references;
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final Set<String> loadedSections = ConcurrentHashMap.newKeySet();
+    private volatile boolean complete;
+    private BiConsumer<String, Map<String, String>> sectionListener;
+
+    LazyConfigMap(ByteBuffer buffer, Map<String, List<int[]>> sections, boolean references) {
+        this.buffer = buffer;
+        this.sections = sections;
+        this.references = references;
+        this.complete = sections.isEmpty();
+    }
+
+    public boolean hasReferences() {
+        return references;
+    }
+
+    public Set<String> getSections() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    public boolean isSectionLoaded(String section) {
+        return loadedSections.contains(section);
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String value = values.get(key);
+        if (value != null || complete) {
+            return value;
+        }
+        String section = sectionOf((String) key);
+        if (loadedSections.contains(section) || !sections.containsKey(section)) {
+            return null;
+        }
+        load(section);
+        return values.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        loadAll();
+        return values.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        loadAll();
+        return Collections.unmodifiableMap(values).entrySet();
+    }
+
+    static String sectionOf(String key) {
+        int dot = key.indexOf('.');
+        return dot < 0 ? key : key.substring(0, dot);
+    }
+
+    synchronized Map<String, String> loadSection(String section) {
+        Map<String, String> parsed = load(section);
+        if (parsed != null) {
+            return parsed;
+        }
+        Map<String, String> loaded = new HashMap<>();
+        values.forEach((key, value) -> {
+            if (sectionOf(key).equals(section)) loaded.put(key, value);
+        });
+        return loaded;
+    }
+
+    synchronized void setSectionListener(BiConsumer<String, Map<String, String>> listener) {
+        this.sectionListener = listener;
+        if (listener != null && !loadedSections.isEmpty()) {
+            Map<String, Map<String, String>> bySection = new HashMap<>();
+            values.forEach((key, value) -> bySection.computeIfAbsent(sectionOf(key), name -> new HashMap<>()).put(key, value));
+            bySection.forEach(listener);
+        }
+    }
+
+    void loadAll() {
+        if (!complete) {
+            for (String section : sections.keySet()) {
+                load(section);
+            }
+        }
+    }
+
+    private synchronized Map<String, String> load(String section) {
+        if (loadedSections.contains(section)) {
+            return null;
+        }
+        Map<String, String> parsed = new HashMap<>();
+        try {
+            for (int[] range : sections.get(section)) {
+                ConfigFileParser.parse(buffer, range[0], range[1], parsed, false);
+            }
+        } catch (ConfigParseException e) {
+            throw new UncheckedIOException(e);
+        }
+        values.putAll(parsed);
+        loadedSections.add(section);
+        if (loadedSections.size() == sections.size()) {
+            complete = true;
+        }
+        if (sectionListener != null) {
+            sectionListener.accept(section, parsed);
+        }
+        return parsed;
+    }
+}
+
+enum ConfigLayer {
+    DEFAULTS,
+    DATABASE,
+    FILE,
+    ENVIRONMENT,
+    SYSTEM_PROPERTIES,
+    OVERRIDES
+}
+
+interface ConfigSource {
+    String getName();
+    ConfigLayer getLayer();
+    Map<String, String> load() throws Exception;
+}
+
+class FileConfigSource implements ConfigSource {
+    private final Path path;
+
+    public FileConfigSource(String filename) {
+        this.path = Paths.get(filename);
+    }
+
+    @Override
+    public String getName() { return "файл " + path; }
+
+    @Override
+    public ConfigLayer getLayer() { return ConfigLayer.FILE; }
+
+    @Override
+    public Map<String, String> load() throws IOException {
+        if (!Files.exists(path)) {
+            throw new IOException("Файл табылмады: " + path);
+        }
+        return ConfigFileParser.parse(path);
+    }
+}
+
+class DatabaseConfigSource implements ConfigSource {
+    private final String connectionString;
+
+    public DatabaseConfigSource(String connectionString) {
+        this.connectionString = connectionString;
+    }
+
+    @Override
+    public String getName() { return "дерекқор " + connectionString; }
+
+    @Override
+    public ConfigLayer getLayer() { return ConfigLayer.DATABASE; }
+
+    @Override
+    public Map<String, String> load() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("db.host", "localhost");
+        settings.put("db.port", "5432");
+        settings.put("db.name", "mydb");
+        settings.put("db.user", "admin");
+        return settings;
+    }
+}
+
+class EnvironmentConfigSource implements ConfigSource {
+    private final String prefix;
+
+    public EnvironmentConfigSource(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public String getName() { return "орта айнымалылары " + prefix + "*"; }
+
+    @Override
+    public ConfigLayer getLayer() { return ConfigLayer.ENVIRONMENT; }
+
+    @Override
+    public Map<String, String> load() {
+        Map<String, String> settings = new HashMap<>();
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                String key = entry.getKey().substring(prefix.length()).toLowerCase(Locale.ROOT).replace('_', '.');
+                settings.put(key, entry.getValue().trim());
+            }
+        }
+        return settings;
+    }
+}
+
+class SystemPropertyConfigSource implements ConfigSource {
+    private final String prefix;
+
+    public SystemPropertyConfigSource(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public String getName() { return "жүйелік қасиеттер " + prefix + "*"; }
+
+    @Override
+    public ConfigLayer getLayer() { return ConfigLayer.SYSTEM_PROPERTIES; }
+
+    @Override
+    public Map<String, String> load() {
+        Map<String, String> settings = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                settings.put(name.substring(prefix.length()), System.getProperty(name).trim());
+            }
+        }
+        return settings;
+    }
+}
+
+final class ConfigDelta {
+    static final ConfigDelta EMPTY = new ConfigDelta(Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet());
+
+    private final Map<String, String> added;
+    private final Map<String, String> changed;
+    private final Set<String> removed;
+
+    ConfigDelta(Map<String, String> added, Map<String, String> changed, Set<String> removed) {
+        this.added = Collections.unmodifiableMap(added);
+        this.changed = Collections.unmodifiableMap(changed);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    public static ConfigDelta between(Map<String, String> before, Map<String, String> after) {
+        Map<String, String> added = new HashMap<>();
+        Map<String, String> changed = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String previous = before.get(entry.getKey());
+            if (previous == null && !before.containsKey(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!Objects.equals(previous, entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty()
+                ? EMPTY : new ConfigDelta(added, changed, removed);
+    }
+
+    public Map<String, String> applyTo(Map<String, String> base) {
+        Map<String, String> next = new HashMap<>(base);
+        next.keySet().removeAll(removed);
+        next.putAll(changed);
+        next.putAll(added);
+        return next;
+    }
+
+    public Map<String, String> getAdded() { return added; }
+    public Map<String, String> getChanged() { return changed; }
+    public Set<String> getRemoved() { return removed; }
+
+    public ConfigDelta filter(Predicate<String> keyFilter) {
+        Map<String, String> filteredAdded = new HashMap<>();
+        Map<String, String> filteredChanged = new HashMap<>();
+        Set<String> filteredRemoved = new HashSet<>();
+        added.forEach((key, value) -> { if (keyFilter.test(key)) filteredAdded.put(key, value); });
+        changed.forEach((key, value) -> { if (keyFilter.test(key)) filteredChanged.put(key, value); });
+        removed.forEach(key -> { if (keyFilter.test(key)) filteredRemoved.add(key); });
+        return filteredAdded.isEmpty() && filteredChanged.isEmpty() && filteredRemoved.isEmpty()
+                ? EMPTY : new ConfigDelta(filteredAdded, filteredChanged, filteredRemoved);
+    }
+
+    public ConfigDelta merge(ConfigDelta next) {
+        Map<String, String> mergedAdded = new HashMap<>(added);
+        Map<String, String> mergedChanged = new HashMap<>(changed);
+        Set<String> mergedRemoved = new HashSet<>(removed);
+        next.added.forEach((key, value) -> {
+            if (mergedRemoved.remove(key)) {
+                mergedChanged.put(key, value);
+            } else {
+                mergedAdded.put(key, value);
+            }
+        });
+        next.changed.forEach((key, value) -> {
+            if (mergedAdded.containsKey(key)) {
+                mergedAdded.put(key, value);
+            } else {
+                mergedChanged.put(key, value);
+            }
+        });
+        for (String key : next.removed) {
+            mergedChanged.remove(key);
+            if (mergedAdded.remove(key) == null) {
+                mergedRemoved.add(key);
+            }
+        }
+        return new ConfigDelta(mergedAdded, mergedChanged, mergedRemoved);
+    }
+
+    public Set<String> getKeys() {
+        Set<String> keys = new HashSet<>(added.keySet());
+        keys.addAll(changed.keySet());
+        keys.addAll(removed);
+        return keys;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "қосылды=" + added.keySet() + ", өзгерді=" + changed.keySet() + ", жойылды=" + removed;
+    }
+}
+
+class ConfigWatcher implements Closeable {
+    private final ConfigurationManager manager;
+    private final Path file;
+    private final long debounceMillis;
+    private final Consumer<ConfigDelta> onChange;
+    private final Consumer<Exception> onError;
+    private final WatchService watchService;
+    private final ScheduledExecutorService scheduler;
+    private final Thread thread;
+    private ScheduledFuture<?> pending;
+
+    ConfigWatcher(ConfigurationManager manager, Path file, long debounceMillis, Consumer<ConfigDelta> onChange,
+                  Consumer<Exception> onError) throws IOException {
+        this.manager = manager;
+        this.file = file.toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+        this.onError = onError;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "config-reload");
+            worker.setDaemon(true);
+            return worker;
+        });
+        this.thread = new Thread(this::watch, "config-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || file.getFileName().equals(event.context())) {
+                        relevant = true;
+                    }
+                }
+                if (relevant) {
+                    if (pending != null) {
+                        pending.cancel(false);
+                    }
+                    pending = scheduler.schedule(this::reload, debounceMillis, TimeUnit.MILLISECONDS);
+                }
+                if (!key.reset()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            pending = null;
+        }
+    }
+
+    private void reload() {
+        ConfigDelta delta;
+        try {
+            delta = manager.reloadFromFile(file.toString());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Конфигурацияны қайта жүктеу қатесі: " + e.getMessage());
+            if (onError != null) {
+                onError.accept(e);
+            }
+            return;
+        }
+        if (!delta.isEmpty() && onChange != null) {
+            try {
+                onChange.accept(delta);
+            } catch (RuntimeException e) {
+                System.err.println("Конфигурация өзгерісін өңдеу қатесі: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        scheduler.shutdownNow();
+        watchService.close();
+    }
+}
+
+final class BinaryConfigSnapshot {
+    private static final int MAGIC = 0x43464753;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 44;
+    private static final int CHECKSUM_OFFSET = 24;
+
+    private BinaryConfigSnapshot() {
+    }
+
+    public static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + ".bin");
+    }
+
+    public static void write(Path target, Map<String, String> settings, BasicFileAttributes source) throws IOException {
+        boolean hasReferences = false;
+        for (String value : settings.values()) {
+            hasReferences |= value.contains("${");
+        }
+        ByteBuffer buffer = encode(settings, HEADER_SIZE);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION)
+                .putLong(8, source.lastModifiedTime().toMillis())
+                .putLong(16, source.size())
+                .putInt(32, settings.size())
+                .putInt(36, tableSizeFor(settings.size()))
+                .putInt(40, hasReferences ? 1 : 0);
+        buffer.putLong(CHECKSUM_OFFSET, checksum(buffer));
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static MappedConfigMap open(Path binary, Path source) throws IOException {
+        if (!Files.exists(binary) || Files.size(binary) < HEADER_SIZE || Files.size(binary) > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getLong(8) != Files.getLastModifiedTime(source).toMillis()
+                || buffer.getLong(16) != Files.size(source)
+                || buffer.getLong(CHECKSUM_OFFSET) != checksum(buffer)) {
+            return null;
+        }
+        return new MappedConfigMap(buffer, buffer.getInt(32), buffer.getInt(36), buffer.getInt(40) != 0);
+    }
+
+    static int tableSizeFor(int count) {
+        return Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+    }
+
+    static ByteBuffer encode(Map<String, String> settings, int tableStart) throws IOException {
+        int tableSize = tableSizeFor(settings.size());
+        int[] hashes = new int[tableSize];
+        int[] offsets = new int[tableSize];
+        Arrays.fill(offsets, -1);
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(strings);
+        int stringsStart = tableStart + tableSize * 8;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            int hash = entry.getKey().hashCode();
+            int index = spread(hash) & (tableSize - 1);
+            while (offsets[index] >= 0) {
+                index = (index + 1) & (tableSize - 1);
+            }
+            hashes[index] = hash;
+            offsets[index] = stringsStart + out.size();
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(stringsStart + out.size());
+        buffer.position(tableStart);
+        for (int i = 0; i < tableSize; i++) {
+            buffer.putInt(hashes[i]).putInt(offsets[i]);
+        }
+        buffer.put(strings.toByteArray());
+        return buffer.clear();
+    }
+
+    static String lookup(ByteBuffer buffer, int tableStart, int tableSize, String key) {
+        int hash = key.hashCode();
+        int index = spread(hash) & (tableSize - 1);
+        for (int probes = 0; probes < tableSize; probes++) {
+            int slot = tableStart + index * 8;
+            int offset = buffer.getInt(slot + 4);
+            if (offset < 0) {
+                return null;
+            }
+            if (buffer.getInt(slot) == hash && keyEquals(buffer, offset, key)) {
+                return readString(buffer, offset + 4 + buffer.getInt(offset));
+            }
+            index = (index + 1) & (tableSize - 1);
+        }
+        return null;
+    }
+
+    static Map<String, String> readAll(ByteBuffer buffer, int from, int to) {
+        Map<String, String> settings = new HashMap<>();
+        int position = from;
+        while (position < to) {
+            String key = readString(buffer, position);
+            position += 4 + buffer.getInt(position);
+            String value = readString(buffer, position);
+            position += 4 + buffer.getInt(position);
+            settings.put(key, value);
+        }
+        return settings;
+    }
+
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean keyEquals(ByteBuffer buffer, int offset, String key) {
+        int length = buffer.getInt(offset);
+        if (length != key.length()) {
+            return length >= key.length() && readString(buffer, offset).equals(key);
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + 4 + i);
+            if (b < 0) {
+                return readString(buffer, offset).equals(key);
+            }
+            if (b != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        if (length < 0 || length > buffer.capacity() - offset - 4) {
+            throw new IndexOutOfBoundsException("Жол ұзындығы жарамсыз: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE).limit(buffer.capacity()));
+        return crc.getValue();
+    }
+
+    static final class MappedConfigMap extends AbstractMap<String, String> {
+        private final ByteBuffer buffer;
+        private final int size;
+        private final int tableSize;
+        private final boolean hasReferences;
+
+        MappedConfigMap(ByteBuffer buffer, int size, int tableSize, boolean hasReferences) {
+            this.buffer = buffer;
+            this.size = size;
+            this.tableSize = tableSize;
+            this.hasReferences = hasReferences;
+        }
+
+        boolean hasReferences() {
+            return hasReferences;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? lookup(buffer, HEADER_SIZE, tableSize, (String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+                        private int position = HEADER_SIZE + tableSize * 8;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < buffer.capacity();
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            String key = readString(buffer, position);
+                            position += 4 + buffer.getInt(position);
+                            String value = readString(buffer, position);
+                            position += 4 + buffer.getInt(position);
+                            return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
+
+class SharedConfigSegment implements Closeable {
+    private static final int MAGIC = 0x43464753;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int END_OFFSET = 24;
+    private static final int CAPACITY_OFFSET = 28;
+    private static final int HEADER_SIZE = 32;
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private final boolean writable;
+
+    private SharedConfigSegment(FileChannel channel, MappedByteBuffer buffer, boolean writable) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.writable = writable;
+    }
+
+    public static SharedConfigSegment createPublisher(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            LONGS.setVolatile(buffer, SEQUENCE_OFFSET, 0L);
+        } else {
+            long sequence = (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET);
+            if ((sequence & 1) != 0 || buffer.getInt(END_OFFSET) > capacity) {
+                if ((sequence & 1) == 0) {
+                    LONGS.setVolatile(buffer, SEQUENCE_OFFSET, ++sequence);
+                    VarHandle.storeStoreFence();
+                }
+                buffer.putInt(16, 0);
+                buffer.putInt(20, 0);
+                buffer.putInt(END_OFFSET, HEADER_SIZE);
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                LONGS.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1);
+            } else {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+            }
+        }
+        return new SharedConfigSegment(channel, buffer, true);
+    }
+
+    public static SharedConfigSegment openReader(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Ортақ конфигурация сегменті жарамсыз: " + path);
+        }
+        return new SharedConfigSegment(channel, buffer, false);
+    }
+
+    public synchronized void write(Map<String, String> settings) throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Сегмент тек оқуға ашылған");
+        }
+        ByteBuffer encoded = BinaryConfigSnapshot.encode(settings, HEADER_SIZE);
+        if (encoded.capacity() > buffer.capacity()) {
+            throw new IOException("Ортақ сегмент сыйымдылығы жеткіліксіз: " + encoded.capacity() + " > " + buffer.capacity());
+        }
+        long sequence = (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET);
+        LONGS.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1);
+        VarHandle.storeStoreFence();
+        buffer.put(HEADER_SIZE, encoded, HEADER_SIZE, encoded.capacity() - HEADER_SIZE);
+        buffer.putInt(16, settings.size());
+        buffer.putInt(20, BinaryConfigSnapshot.tableSizeFor(settings.size()));
+        buffer.putInt(END_OFFSET, encoded.capacity());
+        LONGS.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    public long getSequence() {
+        return (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET);
+    }
+
+    public String get(String key) {
+        return read(current -> {
+            int tableSize = current.getInt(20);
+            return tableSize == 0 ? null : BinaryConfigSnapshot.lookup(current, HEADER_SIZE, tableSize, key);
+        });
+    }
+
+    public Map<String, String> readAll() {
+        return read(current -> {
+            int tableSize = current.getInt(20);
+            return tableSize == 0 ? new HashMap<>()
+                    : BinaryConfigSnapshot.readAll(current, HEADER_SIZE + tableSize * 8, current.getInt(END_OFFSET));
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private <T> T read(Function<ByteBuffer, T> reader) {
+        long deadline = System.nanoTime() + READ_TIMEOUT_NANOS;
+        while (true) {
+            MappedByteBuffer current = buffer;
+            long sequence = awaitStable(current, deadline);
+            T result = null;
+            RuntimeException failure = null;
+            try {
+                current = covering(current);
+                result = reader.apply(current);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            VarHandle.acquireFence();
+            if (failure == null && (long) LONGS.getVolatile(current, SEQUENCE_OFFSET) == sequence) {
+                return result;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Ортақ сегментті оқу сәтсіз аяқталды, реттік нөмір: " + sequence, failure);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private MappedByteBuffer covering(MappedByteBuffer current) {
+        int required = Math.max(current.getInt(CAPACITY_OFFSET), current.getInt(END_OFFSET));
+        if (required <= current.capacity()) {
+            return current;
+        }
+        synchronized (this) {
+            if (buffer.capacity() >= required) {
+                return buffer;
+            }
+            try {
+                long size = channel.size();
+                if (size < required || size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Ортақ сегмент өлшемі жарамсыз: " + size + ", қажет: " + required);
+                }
+                buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+                return buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static long awaitStable(ByteBuffer buffer, long deadline) {
+        while (true) {
+            long sequence = (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET);
+            if ((sequence & 1) == 0) {
+                return sequence;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("Ортақ сегмент жазылуы аяқталмады, реттік нөмір: " + sequence);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    final class LiveView extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? SharedConfigSegment.this.get((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return readAll().entrySet();
+        }
+    }
+}
+
+class ConfigJournal implements Closeable {
+    private final Path configFile;
+    private final Supplier<Map<ConfigLayer, Map<String, String>>> layersSupplier;
+    private final FileChannel channel;
+    private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService scheduler;
+
+    ConfigJournal(Path configFile, long flushIntervalMillis, long compactionIntervalMillis,
+                  Supplier<Map<ConfigLayer, Map<String, String>>> layersSupplier) throws IOException {
+        this.configFile = configFile;
+        this.layersSupplier = layersSupplier;
+        this.channel = FileChannel.open(pathFor(configFile),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "config-journal");
+            worker.setDaemon(true);
+            return worker;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static Path pathFor(Path configFile) {
+        return configFile.resolveSibling(configFile.getFileName() + ".journal");
+    }
+
+    public void append(String key, String value) {
+        pending.add(record(key, value));
+    }
+
+    public static Map<String, String> replay(Path journal) throws IOException {
+        Map<String, String> operations = new LinkedHashMap<>();
+        if (!Files.exists(journal)) {
+            return operations;
+        }
+        String content = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8);
+        content = content.substring(0, content.lastIndexOf('\n') + 1);
+        int lineNumber = 0;
+        for (String line : content.split("\n")) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.charAt(0) == '-') {
+                String key = unescape(line.substring(1));
+                operations.remove(key);
+                operations.put(key, null);
+                continue;
+            }
+            int separator = separatorIndex(line);
+            if (line.charAt(0) != '+' || separator < 0) {
+                throw new ConfigParseException("Журнал жазбасы бұзылған", lineNumber);
+            }
+            String key = unescape(line.substring(1, separator));
+            operations.remove(key);
+            operations.put(key, unescape(line.substring(separator + 1)));
+        }
+        return operations;
+    }
+
+    public void flush() throws IOException {
+        synchronized (channel) {
+            StringBuilder batch = new StringBuilder();
+            String record;
+            while ((record = pending.poll()) != null) {
+                batch.append(record);
+            }
+            if (batch.length() == 0) {
+                return;
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(batch.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+    }
+
+    public void compact() throws IOException {
+        synchronized (channel) {
+            flush();
+            Map<ConfigLayer, Map<String, String>> layers = layersSupplier.get();
+            Map<String, String> settings = new LinkedHashMap<>(layers.get(ConfigLayer.FILE));
+            StringBuilder retained = new StringBuilder();
+            for (Map.Entry<String, String> entry : layers.get(ConfigLayer.OVERRIDES).entrySet()) {
+                if (isPlainText(entry.getKey(), entry.getValue())) {
+                    settings.put(entry.getKey(), entry.getValue());
+                } else {
+                    retained.append(record(entry.getKey(), entry.getValue()));
+                }
+            }
+            ConfigurationManager.writeSettings(configFile, settings);
+            channel.truncate(0);
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(retained.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Журналды жазу қатесі: " + e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("Журналды ықшамдау қатесі: " + e.getMessage());
+        }
+    }
+
+    private static String record(String key, String value) {
+        return value == null ? "-" + escape(key) + "\n" : "+" + escape(key) + "=" + escape(value) + "\n";
+    }
+
+    private static boolean isPlainText(String key, String value) {
+        if (key.isEmpty() || key.charAt(0) == '#' || key.indexOf('=') >= 0 || !isTrimmedLine(key)) {
+            return false;
+        }
+        return value.isEmpty() || isTrimmedLine(value);
+    }
+
+    private static boolean isTrimmedLine(String text) {
+        if (text.charAt(0) <= ' ' || text.charAt(text.length() - 1) <= ' ') {
+            return false;
+        }
+        return text.indexOf('\n') < 0 && text.indexOf('\r') < 0;
+    }
+
+    private static int separatorIndex(String line) {
+        for (int i = 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '=') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '=': out.append("\\="); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String unescape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                out.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
+
+class ConfigListenerRegistration {
+    private final Predicate<String> keyFilter;
+    private final Consumer<ConfigDelta> listener;
+    private final Executor executor;
+    private ConfigDelta pending;
+    private boolean scheduled;
+
+    ConfigListenerRegistration(Predicate<String> keyFilter, Consumer<ConfigDelta> listener, Executor executor) {
+        this.keyFilter = keyFilter;
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    Consumer<ConfigDelta> getListener() { return listener; }
+
+    void offer(ConfigDelta delta) {
+        ConfigDelta relevant = delta.filter(keyFilter);
+        if (relevant.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            pending = pending == null ? relevant : pending.merge(relevant);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            ConfigDelta delta;
+            synchronized (this) {
+                delta = pending;
+                pending = null;
+                if (delta == null || delta.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                listener.accept(delta);
+            } catch (RuntimeException e) {
+                System.err.println("Конфигурация тыңдаушысының қатесі: " + e.getMessage());
+            }
+        }
+    }
+}
+
+class ConfigTransaction {
+    private final ConfigurationManager manager;
+    private final ConfigSnapshot base;
+    private final Map<String, String> staged = new LinkedHashMap<>();
+    private boolean committed;
+
+    ConfigTransaction(ConfigurationManager manager, ConfigSnapshot base) {
+        this.manager = manager;
+        this.base = base;
+    }
+
+    public ConfigTransaction set(String key, String value) {
+        checkOpen();
+        staged.put(key, value);
+        return this;
+    }
+
+    public ConfigTransaction remove(String key) {
+        return set(key, null);
+    }
+
+    public String get(String key, String defaultValue) {
+        if (staged.containsKey(key)) {
+            String value = staged.get(key);
+            return value != null ? value : defaultValue;
+        }
+        return base.getSetting(key, defaultValue);
+    }
+
+    public long getBaseVersion() {
+        return base.getVersion();
+    }
+
+    public long commit() {
+        checkOpen();
+        committed = true;
+        return manager.commit(staged);
+    }
+
+    private void checkOpen() {
+        if (committed) {
+            throw new IllegalStateException("Транзакция аяқталған");
+        }
+    }
+}
+
+final class PersistentHashMap<K, V> {
+    private static final PersistentHashMap<Object, Object> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null ? null : (V) root.find(0, key.hashCode(), key);
+    }
+
+    public PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node next = (root == null ? BitmapNode.EMPTY : root).put(0, key.hashCode(), key, value, added);
+        return next == root ? this : new PersistentHashMap<>(next, added[0] ? size + 1 : size);
+    }
+
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentHashMap<>(root.remove(0, key.hashCode(), key), size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        abstract Node remove(int shift, int hash, Object key);
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object storedKey = array[index];
+            if (storedKey == null) {
+                return ((Node) array[index + 1]).find(shift + 5, hash, key);
+            }
+            return key.equals(storedKey) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] next = new Object[array.length + 2];
+                System.arraycopy(array, 0, next, 0, index);
+                next[index] = key;
+                next[index + 1] = value;
+                System.arraycopy(array, index, next, index + 2, array.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, next);
+            }
+            Object storedKey = array[index];
+            Object storedValue = array[index + 1];
+            if (storedKey == null) {
+                Node child = (Node) storedValue;
+                Node updated = child.put(shift + 5, hash, key, value, added);
+                return updated == child ? this : with(index + 1, null, updated);
+            }
+            if (key.equals(storedKey)) {
+                return storedValue == value ? this : with(index + 1, storedKey, value);
+            }
+            added[0] = true;
+            return with(index + 1, null, createNode(shift + 5, storedKey, storedValue, hash, key, value));
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object storedKey = array[index];
+            if (storedKey == null) {
+                Node child = (Node) array[index + 1];
+                Node updated = child.remove(shift + 5, hash, key);
+                if (updated == child) {
+                    return this;
+                }
+                if (updated != null) {
+                    return with(index + 1, null, updated);
+                }
+            } else if (!key.equals(storedKey)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, index);
+            System.arraycopy(array, index + 2, next, index, array.length - index - 2);
+            return new BitmapNode(bitmap & ~bit, next);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode with(int valueIndex, Object key, Object value) {
+            Object[] next = array.clone();
+            next[valueIndex - 1] = key;
+            next[valueIndex] = value;
+            return new BitmapNode(bitmap, next);
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+        }
+    }
+
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[] {null, this})
+                        .put(shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (array[index + 1] == value) {
+                    return this;
+                }
+                Object[] next = array.clone();
+                next[index + 1] = value;
+                return new CollisionNode(hash, next);
+            }
+            Object[] next = Arrays.copyOf(array, array.length + 2);
+            next[array.length] = key;
+            next[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, next);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] next = new Object[array.length - 2];
+            System.arraycopy(array, 0, next, 0, index);
+            System.arraycopy(array, index + 2, next, index, array.length - index - 2);
+            return new CollisionNode(hash, next);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
+
+class TenantOverlay {
+    private final String tenantId;
+    private final ConfigurationManager base;
+    private volatile PersistentHashMap<String, String> overrides = PersistentHashMap.empty();
+
+    TenantOverlay(String tenantId, ConfigurationManager base) {
+        this.tenantId = tenantId;
+        this.base = base;
+    }
+
+    public String getTenantId() { return tenantId; }
+
+    public String getSetting(String key) {
+        String value = overrides.get(key);
+        return value != null ? value : base.getSetting(key);
+    }
+
+    public String getSetting(String key, String defaultValue) {
+        String value = overrides.get(key);
+        return value != null ? value : base.getSetting(key, defaultValue);
+    }
+
+    public synchronized void setSetting(String key, String value) {
+        overrides = value == null ? overrides.remove(key) : overrides.put(key, value);
+    }
+
+    public PersistentHashMap<String, String> getOverrides() {
+        return overrides;
+    }
+}
+
+class ConfigInterpolator {
+    private final Map<String, List<String>> references = new HashMap<>();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    public static List<String> references(String raw) {
+        if (raw == null || !raw.contains("${")) {
+            return Collections.emptyList();
+        }
+        List<String> found = new ArrayList<>();
+        int start = raw.indexOf("${");
+        while (start >= 0) {
+            int end = raw.indexOf('}', start + 2);
+            if (end < 0) break;
+            found.add(raw.substring(start + 2, end).trim());
+            start = raw.indexOf("${", end + 1);
+        }
+        return found;
+    }
+
+    public Set<String> closure(Set<String> changed) {
+        Set<String> result = new HashSet<>(changed);
+        Deque<String> queue = new ArrayDeque<>(changed);
+        while (!queue.isEmpty()) {
+            Set<String> users = dependents.get(queue.poll());
+            if (users == null) continue;
+            for (String user : users) {
+                if (result.add(user)) {
+                    queue.add(user);
+                }
+            }
+        }
+        return result;
+    }
+
+    public Map<String, String> resolve(Set<String> keys, Function<String, String> raw, Map<String, String> resolvedBefore) {
+        Map<String, String> results = new HashMap<>();
+        for (String key : keys) {
+            interpolate(key, keys, raw, resolvedBefore, results, new ArrayDeque<>());
+        }
+        return results;
+    }
+
+    public void update(Set<String> keys, Function<String, String> raw) {
+        for (String key : keys) {
+            List<String> previous = references.remove(key);
+            if (previous != null) {
+                for (String target : previous) {
+                    Set<String> users = dependents.get(target);
+                    users.remove(key);
+                    if (users.isEmpty()) dependents.remove(target);
+                }
+            }
+            List<String> current = references(raw.apply(key));
+            if (!current.isEmpty()) {
+                references.put(key, current);
+                for (String target : current) {
+                    dependents.computeIfAbsent(target, k -> new HashSet<>()).add(key);
+                }
+            }
+        }
+    }
+
+    public void rebuild(Set<String> keys, Function<String, String> raw) {
+        references.clear();
+        dependents.clear();
+        update(keys, raw);
+    }
+
+    private String interpolate(String key, Set<String> pending, Function<String, String> raw,
+                               Map<String, String> resolvedBefore, Map<String, String> results, Deque<String> path) {
+        if (results.containsKey(key)) {
+            return results.get(key);
+        }
+        if (!pending.contains(key)) {
+            return resolvedBefore.get(key);
+        }
+        if (path.contains(key)) {
+            List<String> cycle = new ArrayList<>(path);
+            Collections.reverse(cycle);
+            cycle = new ArrayList<>(cycle.subList(cycle.indexOf(key), cycle.size()));
+            cycle.add(key);
+            throw new IllegalArgumentException("Циклдік сілтеме: " + String.join(" -> ", cycle));
+        }
+        String value = raw.apply(key);
+        if (value != null && value.contains("${")) {
+            path.push(key);
+            StringBuilder out = new StringBuilder(value.length());
+            int position = 0;
+            int start = value.indexOf("${");
+            while (start >= 0) {
+                int end = value.indexOf('}', start + 2);
+                if (end < 0) break;
+                String target = value.substring(start + 2, end).trim();
+                String replacement = interpolate(target, pending, raw, resolvedBefore, results, path);
+                out.append(value, position, start).append(replacement != null ? replacement : value.substring(start, end + 1));
+                position = end + 1;
+                start = value.indexOf("${", position);
+            }
+            value = out.append(value, position, value.length()).toString();
+            path.pop();
+        }
+        results.put(key, value);
+        return value;
+    }
+}
+
+class ConfigReplicator implements Closeable {
+    private static final int BUCKETS = 256;
+
+    private final String nodeId;
+    private final Consumer<Map<String, String>> applier;
+    private final Object applyLock;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final long[] digests = new long[BUCKETS];
+    private final Set<InetSocketAddress> peers = new CopyOnWriteArraySet<>();
+    private final ServerSocket server;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+    private long clock;
+
+    public ConfigReplicator(String nodeId, int port, Consumer<Map<String, String>> applier) throws IOException {
+        this(nodeId, port, applier, new Object());
+    }
+
+    ConfigReplicator(String nodeId, int port, Consumer<Map<String, String>> applier, Object applyLock) throws IOException {
+        this.nodeId = nodeId;
+        this.applier = applier;
+        this.applyLock = applyLock;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.workers = Executors.newCachedThreadPool(runnable -> {
+            Thread worker = new Thread(runnable, "config-replication-" + nodeId);
+            worker.setDaemon(true);
+            return worker;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "config-anti-entropy-" + nodeId);
+            worker.setDaemon(true);
+            return worker;
+        });
+        workers.execute(this::acceptLoop);
+    }
+
+    public String getNodeId() { return nodeId; }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+    public void addPeer(InetSocketAddress peer) {
+        peers.add(peer);
+    }
+
+    public void removePeer(InetSocketAddress peer) {
+        peers.remove(peer);
+    }
+
+    public void startAntiEntropy(long intervalMillis) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            for (InetSocketAddress peer : peers) {
+                try {
+                    syncWith(peer);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Репликация қатесі " + peer + ": " + e.getMessage());
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void recordLocal(String key, String value) {
+        Entry previous = entries.get(key);
+        Map<String, Long> vector = previous == null ? new TreeMap<>() : new TreeMap<>(previous.vector);
+        vector.put(nodeId, ++clock);
+        store(key, new Entry(value, nodeId, vector));
+    }
+
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public synchronized Map<String, String> getAll() {
+        Map<String, String> values = new HashMap<>();
+        entries.forEach((key, entry) -> {
+            if (entry.value != null) values.put(key, entry.value);
+        });
+        return values;
+    }
+
+    public void syncWith(InetSocketAddress peer) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(peer, 1000);
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            long[] localDigests;
+            synchronized (this) {
+                localDigests = digests.clone();
+            }
+            for (long digest : localDigests) {
+                out.writeLong(digest);
+            }
+            out.flush();
+
+            Map<String, Map<String, Long>> remoteVectors = new HashMap<>();
+            Set<Integer> buckets = new HashSet<>();
+            int bucketCount = in.readInt();
+            for (int i = 0; i < bucketCount; i++) {
+                buckets.add(in.readInt());
+            }
+            int vectorCount = in.readInt();
+            for (int i = 0; i < vectorCount; i++) {
+                remoteVectors.put(readString(in), readVector(in));
+            }
+
+            Map<String, Entry> push = new HashMap<>();
+            List<String> pull = new ArrayList<>();
+            synchronized (this) {
+                for (Map.Entry<String, Entry> local : entries.entrySet()) {
+                    if (!buckets.contains(bucket(local.getKey()))) continue;
+                    Map<String, Long> remote = remoteVectors.get(local.getKey());
+                    if (remote == null || !dominates(remote, local.getValue().vector)) {
+                        push.put(local.getKey(), local.getValue());
+                    }
+                }
+                for (Map.Entry<String, Map<String, Long>> remote : remoteVectors.entrySet()) {
+                    Entry local = entries.get(remote.getKey());
+                    if (local == null || !dominates(local.vector, remote.getValue())) {
+                        pull.add(remote.getKey());
+                    }
+                }
+            }
+            writeEntries(out, push);
+            out.writeInt(pull.size());
+            for (String key : pull) {
+                writeString(out, key);
+            }
+            out.flush();
+            merge(readEntries(in));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        server.close();
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Репликация қосылымы қабылданбады: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setSoTimeout(5000);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            long[] remoteDigests = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                remoteDigests[i] = in.readLong();
+            }
+            List<Integer> differing = new ArrayList<>();
+            Map<String, Map<String, Long>> vectors = new HashMap<>();
+            synchronized (this) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    if (digests[i] != remoteDigests[i]) differing.add(i);
+                }
+                Set<Integer> buckets = new HashSet<>(differing);
+                entries.forEach((key, entry) -> {
+                    if (buckets.contains(bucket(key))) vectors.put(key, entry.vector);
+                });
+            }
+            out.writeInt(differing.size());
+            for (int bucket : differing) {
+                out.writeInt(bucket);
+            }
+            out.writeInt(vectors.size());
+            for (Map.Entry<String, Map<String, Long>> entry : vectors.entrySet()) {
+                writeString(out, entry.getKey());
+                writeVector(out, entry.getValue());
+            }
+            out.flush();
+
+            merge(readEntries(in));
+            int pullCount = in.readInt();
+            Map<String, Entry> requested = new HashMap<>();
+            synchronized (this) {
+                for (int i = 0; i < pullCount; i++) {
+                    String key = readString(in);
+                    Entry entry = entries.get(key);
+                    if (entry != null) requested.put(key, entry);
+                }
+            }
+            writeEntries(out, requested);
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Репликация сеансы үзілді: " + e.getMessage());
+        }
+    }
+
+    private void merge(Map<String, Entry> incoming) {
+        synchronized (applyLock) {
+            synchronized (this) {
+                Map<String, Entry> winners = new HashMap<>();
+                Map<String, String> applied = new HashMap<>();
+                resolve(incoming, winners, applied);
+                if (applied.isEmpty() || applier == null) {
+                    winners.forEach(this::commitEntry);
+                    return;
+                }
+                try {
+                    applier.accept(applied);
+                    winners.forEach(this::commitEntry);
+                } catch (RuntimeException batchFailure) {
+                    for (Map.Entry<String, Entry> winner : winners.entrySet()) {
+                        String key = winner.getKey();
+                        if (applied.containsKey(key)) {
+                            try {
+                                applier.accept(Collections.singletonMap(key, applied.get(key)));
+                            } catch (RuntimeException e) {
+                                System.err.println("Репликацияланған мән қабылданбады " + key + ": " + e.getMessage());
+                                continue;
+                            }
+                        }
+                        commitEntry(key, winner.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private void resolve(Map<String, Entry> incoming, Map<String, Entry> winners, Map<String, String> applied) {
+        for (Map.Entry<String, Entry> remote : incoming.entrySet()) {
+            String key = remote.getKey();
+            Entry theirs = remote.getValue();
+            Entry ours = entries.get(key);
+            Entry winner;
+            if (ours == null || dominates(theirs.vector, ours.vector)) {
+                winner = theirs;
+            } else if (dominates(ours.vector, theirs.vector)) {
+                continue;
+            } else {
+                Map<String, Long> merged = new TreeMap<>(ours.vector);
+                theirs.vector.forEach((node, counter) -> merged.merge(node, counter, Math::max));
+                Entry preferred = prefer(ours, theirs);
+                winner = new Entry(preferred.value, preferred.writer, merged);
+            }
+            winners.put(key, winner);
+            if (ours == null || !Objects.equals(ours.value, winner.value)) {
+                applied.put(key, winner.value);
+            }
+        }
+    }
+
+    private void commitEntry(String key, Entry winner) {
+        for (long counter : winner.vector.values()) {
+            clock = Math.max(clock, counter);
+        }
+        store(key, winner);
+    }
+
+    private void store(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        int bucket = bucket(key);
+        if (previous != null) {
+            digests[bucket] ^= previous.hash(key);
+        }
+        digests[bucket] ^= entry.hash(key);
+    }
+
+    private static Entry prefer(Entry a, Entry b) {
+        long sumA = a.vector.values().stream().mapToLong(Long::longValue).sum();
+        long sumB = b.vector.values().stream().mapToLong(Long::longValue).sum();
+        if (sumA != sumB) return sumA > sumB ? a : b;
+        int byWriter = a.writer.compareTo(b.writer);
+        if (byWriter != 0) return byWriter > 0 ? a : b;
+        return String.valueOf(a.value).compareTo(String.valueOf(b.value)) >= 0 ? a : b;
+    }
+
+    private static boolean dominates(Map<String, Long> a, Map<String, Long> b) {
+        for (Map.Entry<String, Long> entry : b.entrySet()) {
+            if (a.getOrDefault(entry.getKey(), 0L) < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int bucket(String key) {
+        return BinaryConfigSnapshot.spread(key.hashCode()) & (BUCKETS - 1);
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<String, Entry> batch) throws IOException {
+        out.writeInt(batch.size());
+        for (Map.Entry<String, Entry> entry : batch.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeBoolean(entry.getValue().value != null);
+            if (entry.getValue().value != null) {
+                writeString(out, entry.getValue().value);
+            }
+            writeString(out, entry.getValue().writer);
+            writeVector(out, entry.getValue().vector);
+        }
+    }
+
+    private static Map<String, Entry> readEntries(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Entry> batch = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            String value = in.readBoolean() ? readString(in) : null;
+            String writer = readString(in);
+            batch.put(key, new Entry(value, writer, readVector(in)));
+        }
+        return batch;
+    }
+
+    private static void writeVector(DataOutputStream out, Map<String, Long> vector) throws IOException {
+        out.writeInt(vector.size());
+        for (Map.Entry<String, Long> entry : vector.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static Map<String, Long> readVector(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Long> vector = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            vector.put(readString(in), in.readLong());
+        }
+        return vector;
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+        final String value;
+        final String writer;
+        final Map<String, Long> vector;
+
+        Entry(String value, String writer, Map<String, Long> vector) {
+            this.value = value;
+            this.writer = writer;
+            this.vector = Collections.unmodifiableMap(vector);
+        }
+
+        long hash(String key) {
+            long hash = key.hashCode() * 31L + Objects.hashCode(value);
+            for (Map.Entry<String, Long> entry : vector.entrySet()) {
+                hash = hash * 1_000_003L + entry.getKey().hashCode() * 31L + entry.getValue();
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            return hash ^ (hash >>> 33);
+        }
+    }
+}
+
+class ConfigValidationException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> errors;
+
+    public ConfigValidationException(List<String> errors) {
+        super("Конфигурация тексеруден өтпеді:\n  " + String.join("\n  ", errors));
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public List<String> getErrors() { return errors; }
+}
+
+final class ConfigRule {
+    private final Class<?> type;
+    private final Function<String, ?> parser;
+    private double min = Double.NEGATIVE_INFINITY;
+    private double max = Double.POSITIVE_INFINITY;
+    private Pattern pattern;
+    private boolean required;
+
+    private ConfigRule(Class<?> type, Function<String, ?> parser) {
+        this.type = type;
+        this.parser = parser;
+    }
+
+    public static ConfigRule string() { return new ConfigRule(String.class, Function.identity()); }
+    public static ConfigRule integer() { return new ConfigRule(Integer.class, Integer::valueOf); }
+    public static ConfigRule longValue() { return new ConfigRule(Long.class, Long::valueOf); }
+    public static ConfigRule decimal() { return new ConfigRule(Double.class, Double::valueOf); }
+    public static ConfigRule bool() { return new ConfigRule(Boolean.class, ConfigurationManager::parseBoolean); }
+    public static ConfigRule duration() { return new ConfigRule(Duration.class, ConfigurationManager::parseDuration); }
+
+    public ConfigRule range(double min, double max) {
+        if (!Number.class.isAssignableFrom(type)) {
+            throw new IllegalStateException("Ауқым тек сандық түрлерге қолданылады: " + type.getSimpleName());
+        }
+        if (min > max) {
+            throw new IllegalArgumentException("Ауқым қате: " + min + " > " + max);
+        }
+        this.min = min;
+        this.max = max;
+        return this;
+    }
+
+    public ConfigRule pattern(String regex) {
+        this.pattern = Pattern.compile(regex);
+        return this;
+    }
+
+    public ConfigRule required() {
+        this.required = true;
+        return this;
+    }
+
+    Class<?> getType() { return type; }
+    boolean isRequired() { return required; }
+
+    Object check(String key, String raw, List<String> errors) {
+        if (pattern != null && !pattern.matcher(raw).matches()) {
+            errors.add(key + ": мән " + pattern.pattern() + " үлгісіне сәйкес емес = " + raw);
+            return null;
+        }
+        Object value;
+        try {
+            value = parser.apply(raw);
+        } catch (RuntimeException e) {
+            errors.add(key + ": мән " + type.getSimpleName() + " түріне сәйкес емес = " + raw);
+            return null;
+        }
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number < min || number > max) {
+                errors.add(key + ": мән [" + min + ", " + max + "] ауқымынан тыс = " + raw);
+                return null;
+            }
+        }
+        return value;
+    }
+}
+
+final class ConfigSchema {
+    private final Map<String, ConfigRule> keyRules;
+    private final String[] prefixes;
+    private final ConfigRule[] prefixRules;
+    private final String[] required;
+
+    private ConfigSchema(Map<String, ConfigRule> keyRules, Map<String, ConfigRule> prefixRules) {
+        this.keyRules = new HashMap<>(keyRules);
+        List<String> ordered = new ArrayList<>(prefixRules.keySet());
+        ordered.sort(Comparator.comparingInt(String::length).reversed());
+        this.prefixes = ordered.toArray(new String[0]);
+        this.prefixRules = new ConfigRule[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            this.prefixRules[i] = prefixRules.get(prefixes[i]);
+        }
+        List<String> requiredKeys = new ArrayList<>();
+        for (Map.Entry<String, ConfigRule> entry : keyRules.entrySet()) {
+            if (entry.getValue().isRequired()) {
+                requiredKeys.add(entry.getKey());
+            }
+        }
+        Collections.sort(requiredKeys);
+        this.required = requiredKeys.toArray(new String[0]);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    Map<String, Object> validate(Map<String, String> changes, Function<String, String> current) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Object> converted = new HashMap<>();
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            ConfigRule rule = ruleFor(entry.getKey());
+            if (rule != null) {
+                Object value = rule.check(entry.getKey(), entry.getValue(), errors);
+                if (value != null && rule.getType() != String.class) {
+                    converted.put(entry.getKey(), value);
+                }
+            }
+        }
+        for (String key : required) {
+            String value = changes.containsKey(key) ? changes.get(key) : current.apply(key);
+            if (value == null) {
+                errors.add(key + ": міндетті параметр орнатылмаған");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ConfigValidationException(errors);
+        }
+        return converted;
+    }
+
+    boolean covers(String section) {
+        for (String key : keyRules.keySet()) {
+            if (LazyConfigMap.sectionOf(key).equals(section)) {
+                return true;
+            }
+        }
+        for (String prefix : prefixes) {
+            int dot = prefix.indexOf('.');
+            if (dot < 0 ? section.startsWith(prefix) : prefix.substring(0, dot).equals(section)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void prime(ConfigSnapshot snapshot, Map<String, Object> converted) {
+        for (Map.Entry<String, Object> entry : converted.entrySet()) {
+            snapshot.prime(entry.getKey(), ruleFor(entry.getKey()).getType(), entry.getValue());
+        }
+    }
+
+    private ConfigRule ruleFor(String key) {
+        ConfigRule rule = keyRules.get(key);
+        if (rule != null) {
+            return rule;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (key.startsWith(prefixes[i])) {
+                return prefixRules[i];
+            }
+        }
+        return null;
+    }
+
+    static final class Builder {
+        private final Map<String, ConfigRule> keyRules = new LinkedHashMap<>();
+        private final Map<String, ConfigRule> prefixRules = new LinkedHashMap<>();
+
+        public Builder key(String key, ConfigRule rule) {
+            keyRules.put(key, rule);
+            return this;
+        }
+
+        public Builder prefix(String prefix, ConfigRule rule) {
+            if (rule.isRequired()) {
+                throw new IllegalArgumentException("Префикс ережесі міндетті бола алмайды: " + prefix);
+            }
+            prefixRules.put(prefix, rule);
+            return this;
+        }
+
+        public ConfigSchema build() {
+            return new ConfigSchema(keyRules, prefixRules);
+        }
+    }
+}
+
+class ConfigSecrets implements Closeable {
+    static final String PREFIX = "enc:";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, CachedSecret> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final ScheduledExecutorService scheduler;
+
+    ConfigSecrets(SecretKey key, int maxEntries, Duration ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Кэш көлемі оң болуы керек: " + maxEntries);
+        }
+        this.key = key;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "config-secrets");
+            worker.setDaemon(true);
+            return worker;
+        });
+        long millis = Math.max(ttl.toMillis(), 1);
+        scheduler.scheduleWithFixedDelay(this::evictExpired, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public static SecretKey loadKey(Path keyFile) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(new String(Files.readAllBytes(keyFile), StandardCharsets.US_ASCII).trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Кілт файлы Base64 форматында емес: " + keyFile, e);
+        }
+        if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32) {
+            throw new IOException("AES кілтінің ұзындығы қате: " + bytes.length + " байт");
+        }
+        return new SecretKeySpec(bytes, "AES");
+    }
+
+    public static SecretKey generateKey(Path keyFile) throws IOException {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        if (keyFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(keyFile);
+            System.err.println("Кілт файлының рұқсаттары орнатылмады: " + keyFile);
+        }
+        Files.write(keyFile, Base64.getEncoder().encode(bytes), StandardOpenOption.WRITE);
+        return new SecretKeySpec(bytes, "AES");
+    }
+
+    public static boolean isEncrypted(String value) {
+        return value != null && value.startsWith(PREFIX);
+    }
+
+    public String encrypt(String plaintext) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] sealed = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            byte[] out = new byte[IV_LENGTH + sealed.length];
+            System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+            System.arraycopy(sealed, 0, out, IV_LENGTH, sealed.length);
+            return PREFIX + Base64.getEncoder().encodeToString(out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Мәнді шифрлау мүмкін емес", e);
+        }
+    }
+
+    public String reveal(String key, String value) {
+        long now = System.nanoTime();
+        synchronized (cache) {
+            CachedSecret cached = cache.get(value);
+            if (cached != null && cached.expiresAt - now > 0) {
+                return cached.plaintext;
+            }
+        }
+        String plaintext = decrypt(key, value);
+        synchronized (cache) {
+            cache.put(value, new CachedSecret(plaintext, now + ttlNanos));
+            Iterator<CachedSecret> eldest = cache.values().iterator();
+            while (cache.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return plaintext;
+    }
+
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        clearCache();
+    }
+
+    private String decrypt(String key, String value) {
+        try {
+            byte[] in = Base64.getDecoder().decode(value.substring(PREFIX.length()));
+            if (in.length < IV_LENGTH + TAG_BITS / 8) {
+                throw new IllegalStateException("Құпия мән тым қысқа: " + key);
+            }
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_BITS, in, 0, IV_LENGTH));
+            byte[] plain = cipher.doFinal(in, IV_LENGTH, in.length - IV_LENGTH);
+            String plaintext = new String(plain, StandardCharsets.UTF_8);
+            Arrays.fill(plain, (byte) 0);
+            return plaintext;
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Құпия мәнді шешу мүмкін емес: " + key, e);
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.nanoTime();
+        synchronized (cache) {
+            cache.values().removeIf(cached -> cached.expiresAt - now <= 0);
+        }
+    }
+
+    private static final class CachedSecret {
+        final String plaintext;
+        final long expiresAt;
+
+        CachedSecret(String plaintext, long expiresAt) {
+            this.plaintext = plaintext;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
+
+final class FeatureContext {
+    private final String userId;
+    private final Map<String, String> attributes = new HashMap<>();
+
+    private FeatureContext(String userId) {
+        this.userId = userId;
+    }
+
+    public static FeatureContext of(String userId) {
+        return new FeatureContext(userId);
+    }
+
+    public FeatureContext with(String attribute, String value) {
+        attributes.put(attribute, value);
+        return this;
+    }
+
+    public String getUserId() { return userId; }
+
+    public String getAttribute(String attribute) {
+        return attributes.get(attribute);
+    }
+}
+
+class FeatureFlags implements Closeable {
+    private final ConfigurationManager manager;
+    private final String prefix;
+    private final Consumer<ConfigDelta> listener = this::apply;
+    private volatile Map<String, Predicate<FeatureContext>> flags = Collections.emptyMap();
+
+    FeatureFlags(ConfigurationManager manager, String prefix) {
+        this.manager = manager;
+        this.prefix = prefix;
+        synchronized (this) {
+            manager.addPrefixListener(prefix, listener);
+            try {
+                Map<String, Predicate<FeatureContext>> compiled = new HashMap<>();
+                for (Map.Entry<String, String> entry : manager.getByPrefix(prefix).entrySet()) {
+                    String flag = entry.getKey().substring(prefix.length());
+                    compiled.put(flag, compile(flag, entry.getValue()));
+                }
+                this.flags = compiled;
+            } catch (RuntimeException e) {
+                manager.removeListener(listener);
+                throw e;
+            }
+        }
+    }
+
+    public boolean isEnabled(String flag, FeatureContext context) {
+        Predicate<FeatureContext> rule = flags.get(flag);
+        return rule != null && rule.test(context);
+    }
+
+    public Set<String> getFlags() {
+        return Collections.unmodifiableSet(flags.keySet());
+    }
+
+    @Override
+    public void close() {
+        manager.removeListener(listener);
+    }
+
+    private synchronized void apply(ConfigDelta delta) {
+        Map<String, Predicate<FeatureContext>> next = new HashMap<>(flags);
+        for (String key : delta.getRemoved()) {
+            next.remove(key.substring(prefix.length()));
+        }
+        Map<String, String> updates = new HashMap<>(delta.getAdded());
+        updates.putAll(delta.getChanged());
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            String flag = entry.getKey().substring(prefix.length());
+            try {
+                next.put(flag, compile(flag, entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        flags = next;
+    }
+
+    static Predicate<FeatureContext> compile(String flag, String expression) {
+        String[] alternatives = expression.split("\\|\\|");
+        List<Predicate<FeatureContext>> anyOf = new ArrayList<>();
+        for (String alternative : alternatives) {
+            String[] terms = alternative.split("&&");
+            List<Predicate<FeatureContext>> allOf = new ArrayList<>();
+            for (String term : terms) {
+                allOf.add(compileTerm(flag, term.trim()));
+            }
+            anyOf.add(allOf.size() == 1 ? allOf.get(0) : and(allOf));
+        }
+        return anyOf.size() == 1 ? anyOf.get(0) : or(anyOf);
+    }
+
+    private static Predicate<FeatureContext> compileTerm(String flag, String term) {
+        if (term.equalsIgnoreCase("true")) {
+            return context -> true;
+        }
+        if (term.equalsIgnoreCase("false")) {
+            return context -> false;
+        }
+        try {
+            if (term.endsWith("%")) {
+                double percent = Double.parseDouble(term.substring(0, term.length() - 1).trim());
+                if (percent < 0 || percent > 100) {
+                    throw new IllegalArgumentException(term);
+                }
+                int threshold = (int) Math.round(percent * 100);
+                int salt = flag.hashCode();
+                return context -> context.getUserId() != null && bucket(salt, context.getUserId()) < threshold;
+            }
+            int operator = term.indexOf("!=");
+            if (operator > 0) {
+                String attribute = term.substring(0, operator).trim();
+                String expected = term.substring(operator + 2).trim();
+                return context -> !expected.equals(context.getAttribute(attribute));
+            }
+            operator = term.indexOf("==");
+            if (operator > 0) {
+                String attribute = term.substring(0, operator).trim();
+                String expected = term.substring(operator + 2).trim();
+                return context -> expected.equals(context.getAttribute(attribute));
+            }
+            operator = term.indexOf(" in ");
+            if (operator > 0) {
+                String attribute = term.substring(0, operator).trim();
+                Set<String> expected = new HashSet<>();
+                for (String value : term.substring(operator + 4).split(",")) {
+                    expected.add(value.trim());
+                }
+                return context -> {
+                    String value = context.getAttribute(attribute);
+                    return value != null && expected.contains(value);
+                };
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Жалауша ережесі қате: " + flag + " = " + term, e);
+        }
+        throw new IllegalArgumentException("Жалауша ережесі қате: " + flag + " = " + term);
+    }
+
+    private static Predicate<FeatureContext> and(List<Predicate<FeatureContext>> terms) {
+        Predicate<FeatureContext>[] all = toArray(terms);
+        return context -> {
+            for (Predicate<FeatureContext> term : all) {
+                if (!term.test(context)) return false;
+            }
+            return true;
+        };
+    }
+
+    private static Predicate<FeatureContext> or(List<Predicate<FeatureContext>> terms) {
+        Predicate<FeatureContext>[] any = toArray(terms);
+        return context -> {
+            for (Predicate<FeatureContext> term : any) {
+                if (term.test(context)) return true;
+            }
+            return false;
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<FeatureContext>[] toArray(List<Predicate<FeatureContext>> terms) {
+        return terms.toArray(new Predicate[0]);
+    }
+
+    static int bucket(int salt, String userId) {
+        int h = salt * 0x9E3779B9 ^ userId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return (h & 0x7FFFFFFF) % 10000;
+    }
+}
+
+final class ConfigNearCache {
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+    private long epoch = -1;
+
+    ConfigNearCache(int capacity) {
+        this.keys = new String[capacity];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    String get(ConfigSnapshot snapshot, String key) {
+        if (snapshot.isLive()) {
+            return snapshot.getSetting(key, null);
+        }
+        long version = snapshot.getVersion();
+        if (epoch != version) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            epoch = version;
+        }
+        int index = key.hashCode() & mask;
+        String cached = keys[index];
+        if (cached == key || key.equals(cached)) {
+            return values[index];
+        }
+        String value = snapshot.getSetting(key, null);
+        keys[index] = key;
+        values[index] = value;
+        return value;
+    }
+}
+
+final class ConfigAccessStats {
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+    private static final int DEFAULT = 2;
+    private static final int RECORDER_SLOTS = 256;
+    private static final int FLUSH_THRESHOLD = 64;
+
+    private final ConcurrentHashMap<String, KeyStats> counters = new ConcurrentHashMap<>();
+    private final LongAdder untracked = new LongAdder();
+    private final ThreadLocal<Recorder> recorders = ThreadLocal.withInitial(Recorder::new);
+    private final int maxKeys;
+    private volatile int epoch;
+    private ScheduledExecutorService scheduler;
+
+    ConfigAccessStats(int maxKeys) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Кілттер шегі оң болуы керек: " + maxKeys);
+        }
+        this.maxKeys = maxKeys;
+    }
+
+    void recordHit(String key) {
+        record(key, HIT);
+    }
+
+    void recordMiss(String key) {
+        record(key, MISS);
+    }
+
+    void recordDefault(String key) {
+        record(key, DEFAULT);
+    }
+
+    public KeyStats get(String key) {
+        recorders.get().flushAll();
+        return counters.get(key);
+    }
+
+    public Map<String, KeyStats> getAll() {
+        recorders.get().flushAll();
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    public List<KeyStats> topKeys(int limit) {
+        recorders.get().flushAll();
+        List<KeyStats> result = new ArrayList<>(counters.values());
+        result.sort(Comparator.comparingLong(KeyStats::getReads).reversed().thenComparing(KeyStats::getKey));
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    public Set<String> unreadKeys(Collection<String> keys) {
+        recorders.get().flushAll();
+        Set<String> result = new TreeSet<>();
+        for (String key : keys) {
+            KeyStats stats = counters.get(key);
+            if (stats == null || stats.getHits() == 0) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    public void reset() {
+        epoch++;
+        counters.clear();
+        untracked.reset();
+    }
+
+    public String dump(int limit) {
+        StringBuilder builder = new StringBuilder("=== Параметрлерге қол жеткізу статистикасы ===\n");
+        for (KeyStats stats : topKeys(limit)) {
+            builder.append(stats).append('\n');
+        }
+        if (untracked.sum() > 0) {
+            builder.append("Есепке алынбаған оқулар: ").append(untracked.sum()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public synchronized void startDump(Duration interval, int limit, Consumer<String> sink) {
+        stopDump();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread worker = new Thread(runnable, "config-access-stats");
+            worker.setDaemon(true);
+            return worker;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> sink.accept(dump(limit)), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void record(String key, int kind) {
+        Recorder recorder = recorders.get();
+        if (recorder.epoch != epoch) {
+            recorder.clear(epoch);
+        }
+        int index = key.hashCode() & (RECORDER_SLOTS - 1);
+        KeyStats stats = recorder.stats[index];
+        if (stats != null && (stats.key == key || stats.key.equals(key))) {
+            if (++recorder.pending[index * 3 + kind] >= FLUSH_THRESHOLD) {
+                recorder.flush(index);
+            }
+            return;
+        }
+        recorder.flush(index);
+        recorder.stats[index] = null;
+        stats = statsFor(key);
+        if (stats != null) {
+            recorder.stats[index] = stats;
+            stats.add(kind, 1);
+        }
+    }
+
+    private KeyStats statsFor(String key) {
+        KeyStats stats = counters.get(key);
+        if (stats != null) {
+            return stats;
+        }
+        if (counters.size() >= maxKeys) {
+            untracked.increment();
+            return null;
+        }
+        return counters.computeIfAbsent(key, KeyStats::new);
+    }
+
+    static final class KeyStats {
+        private final String key;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder defaults = new LongAdder();
+
+        KeyStats(String key) {
+            this.key = key;
+        }
+
+        public String getKey() { return key; }
+        public long getHits() { return hits.sum(); }
+        public long getMisses() { return misses.sum(); }
+        public long getDefaults() { return defaults.sum(); }
+        public long getReads() { return hits.sum() + misses.sum() + defaults.sum(); }
+
+        void add(int kind, long count) {
+            (kind == HIT ? hits : kind == MISS ? misses : defaults).add(count);
+        }
+
+        @Override
+        public String toString() {
+            return key + " hits=" + getHits() + " misses=" + getMisses() + " defaults=" + getDefaults();
+        }
+    }
+
+    private static final class Recorder {
+        private final KeyStats[] stats = new KeyStats[RECORDER_SLOTS];
+        private final int[] pending = new int[RECORDER_SLOTS * 3];
+        private int epoch;
+
+        void flush(int index) {
+            KeyStats target = stats[index];
+            if (target == null) {
+                return;
+            }
+            for (int kind = 0; kind < 3; kind++) {
+                int count = pending[index * 3 + kind];
+                if (count != 0) {
+                    target.add(kind, count);
+                    pending[index * 3 + kind] = 0;
+                }
+            }
+        }
+
+        void flushAll() {
+            for (int index = 0; index < RECORDER_SLOTS; index++) {
+                flush(index);
+            }
+        }
+
+        void clear(int epoch) {
+            Arrays.fill(stats, null);
+            Arrays.fill(pending, 0);
+            this.epoch = epoch;
+        }
+    }
+}
+
+enum ConfigStorage {
+    HASH_MAP,
+    COMPACT
+}
+
+final class CompactStringMap extends AbstractMap<String, String> {
+    private final byte[] data;
+    private final int[] offsets;
+    private final int[] hashes;
+    private final int size;
+
+    private CompactStringMap(byte[] data, int[] offsets, int[] hashes, int size) {
+        this.data = data;
+        this.offsets = offsets;
+        this.hashes = hashes;
+        this.size = size;
+    }
+
+    public static CompactStringMap from(Map<String, String> settings) {
+        int tableSize = BinaryConfigSnapshot.tableSizeFor(settings.size());
+        int[] offsets = new int[tableSize];
+        int[] hashes = new int[tableSize];
+        long total = 0;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            total += 8L + utf8Length(entry.getKey()) + utf8Length(entry.getValue());
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Конфигурация ықшам қоймаға сыймайды: " + total + " байт");
+        }
+        byte[] data = new byte[(int) total];
+        int position = 0;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            int hash = entry.getKey().hashCode();
+            int index = BinaryConfigSnapshot.spread(hash) & (tableSize - 1);
+            while (offsets[index] != 0) {
+                index = (index + 1) & (tableSize - 1);
+            }
+            offsets[index] = position + 1;
+            hashes[index] = hash;
+            position = writeString(data, position, entry.getKey());
+            position = writeString(data, position, entry.getValue());
+        }
+        return new CompactStringMap(data, offsets, hashes, settings.size());
+    }
+
+    public CompactStringMap with(Map<String, String> upserts, Set<String> removals) {
+        boolean[] dropped = new boolean[offsets.length];
+        int kept = size;
+        long total = data.length;
+        for (String key : removals) {
+            int index = slotOf(key);
+            if (index >= 0 && !dropped[index]) {
+                dropped[index] = true;
+                kept--;
+                total -= entryLength(offsets[index] - 1);
+            }
+        }
+        for (Map.Entry<String, String> entry : upserts.entrySet()) {
+            int index = slotOf(entry.getKey());
+            if (index >= 0 && !dropped[index]) {
+                dropped[index] = true;
+                kept--;
+                total -= entryLength(offsets[index] - 1);
+            }
+            total += 8L + utf8Length(entry.getKey()) + utf8Length(entry.getValue());
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Конфигурация ықшам қоймаға сыймайды: " + total + " байт");
+        }
+        int count = kept + upserts.size();
+        int tableSize = BinaryConfigSnapshot.tableSizeFor(count);
+        int[] nextOffsets = new int[tableSize];
+        int[] nextHashes = new int[tableSize];
+        byte[] nextData = new byte[(int) total];
+        int position = 0;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] == 0 || dropped[slot]) {
+                continue;
+            }
+            int offset = offsets[slot] - 1;
+            int length = entryLength(offset);
+            int index = BinaryConfigSnapshot.spread(hashes[slot]) & (tableSize - 1);
+            while (nextOffsets[index] != 0) {
+                index = (index + 1) & (tableSize - 1);
+            }
+            nextOffsets[index] = position + 1;
+            nextHashes[index] = hashes[slot];
+            System.arraycopy(data, offset, nextData, position, length);
+            position += length;
+        }
+        for (Map.Entry<String, String> entry : upserts.entrySet()) {
+            int hash = entry.getKey().hashCode();
+            int index = BinaryConfigSnapshot.spread(hash) & (tableSize - 1);
+            while (nextOffsets[index] != 0) {
+                index = (index + 1) & (tableSize - 1);
+            }
+            nextOffsets[index] = position + 1;
+            nextHashes[index] = hash;
+            position = writeString(nextData, position, entry.getKey());
+            position = writeString(nextData, position, entry.getValue());
+        }
+        return new CompactStringMap(nextData, nextOffsets, nextHashes, count);
+    }
+
+    public long footprintBytes() {
+        return 16L + data.length + 16L + offsets.length * 4L + 16L + hashes.length * 4L + 32L;
+    }
+
+    public static long estimateHashMapFootprint(Map<String, String> settings) {
+        long bytes = 48L + 16L + BinaryConfigSnapshot.tableSizeFor(settings.size()) * 4L;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            bytes += 32L + stringFootprint(entry.getKey()) + stringFootprint(entry.getValue());
+        }
+        return bytes;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int index = slotOf((String) key);
+        if (index < 0) {
+            return null;
+        }
+        int offset = offsets[index] - 1;
+        return readString(offset + 4 + readInt(offset));
+    }
+
+    private int slotOf(String key) {
+        int hash = key.hashCode();
+        int mask = offsets.length - 1;
+        int index = BinaryConfigSnapshot.spread(hash) & mask;
+        while (true) {
+            int offset = offsets[index] - 1;
+            if (offset < 0) {
+                return -1;
+            }
+            if (hashes[index] == hash && keyEquals(offset, key)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int entryLength(int offset) {
+        int valueOffset = offset + 4 + readInt(offset);
+        return valueOffset + 4 + readInt(valueOffset) - offset;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < data.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = readString(position);
+                        position += 4 + readInt(position);
+                        String value = readString(position);
+                        position += 4 + readInt(position);
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                };
+            }
+        };
+    }
+
+    private boolean keyEquals(int offset, String key) {
+        int position = offset + 4;
+        int end = position + readInt(offset);
+        int length = key.length();
+        int i = 0;
+        while (position < end) {
+            int b = data[position] & 0xFF;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                position += 1;
+            } else if (b < 0xE0) {
+                codePoint = ((b & 0x1F) << 6) | (data[position + 1] & 0x3F);
+                position += 2;
+            } else if (b < 0xF0) {
+                codePoint = ((b & 0x0F) << 12) | ((data[position + 1] & 0x3F) << 6) | (data[position + 2] & 0x3F);
+                position += 3;
+            } else {
+                codePoint = ((b & 0x07) << 18) | ((data[position + 1] & 0x3F) << 12)
+                        | ((data[position + 2] & 0x3F) << 6) | (data[position + 3] & 0x3F);
+                position += 4;
+            }
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (i + 1 >= length || key.charAt(i) != Character.highSurrogate(codePoint)
+                        || key.charAt(i + 1) != Character.lowSurrogate(codePoint)) {
+                    return false;
+                }
+                i += 2;
+            } else {
+                if (i >= length || key.charAt(i) != codePoint) {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return i == length;
+    }
+
+    private int readInt(int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private String readString(int offset) {
+        int position = offset + 4;
+        int end = position + readInt(offset);
+        char[] chars = new char[end - position];
+        int length = 0;
+        while (position < end) {
+            int b = data[position] & 0xFF;
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+                position += 1;
+            } else if (b < 0xE0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (data[position + 1] & 0x3F));
+                position += 2;
+            } else if (b < 0xF0) {
+                chars[length++] = (char) (((b & 0x0F) << 12) | ((data[position + 1] & 0x3F) << 6) | (data[position + 2] & 0x3F));
+                position += 3;
+            } else {
+                int codePoint = ((b & 0x07) << 18) | ((data[position + 1] & 0x3F) << 12)
+                        | ((data[position + 2] & 0x3F) << 6) | (data[position + 3] & 0x3F);
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+                position += 4;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static int writeString(byte[] data, int position, String text) {
+        int start = position + 4;
+        int out = start;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                data[out++] = (byte) c;
+            } else if (c < 0x800) {
+                data[out++] = (byte) (0xC0 | (c >> 6));
+                data[out++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                data[out++] = (byte) (0xF0 | (codePoint >> 18));
+                data[out++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                data[out++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                data[out++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                data[out++] = (byte) (0xE0 | (c >> 12));
+                data[out++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[out++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        int length = out - start;
+        data[position] = (byte) (length >>> 24);
+        data[position + 1] = (byte) (length >>> 16);
+        data[position + 2] = (byte) (length >>> 8);
+        data[position + 3] = (byte) length;
+        return out;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static long stringFootprint(String text) {
+        boolean latin1 = true;
+        for (int i = 0; i < text.length() && latin1; i++) {
+            latin1 = text.charAt(i) < 0x100;
+        }
+        long array = 16L + (latin1 ? text.length() : text.length() * 2L);
+        return 24L + ((array + 7) & ~7L);
+    }
+}
 
 class ConfigurationManager {
     private static volatile ConfigurationManager instance;
     private static final Object lock = new Object();
-    private Map<String, String> settings;
-    private boolean isLoaded;
+    private final Object writeLock = new Object();
+    private volatile ConfigSnapshot snapshot;
+    private ConfigWatcher watcher;
+    private ConfigJournal journal;
+    private SharedConfigSegment sharedSegment;
+    private SharedConfigSegment sharedReader;
+    private ConfigSnapshot detached;
+    private LazyConfigMap notifyingLayer;
+    private ConfigReplicator replicator;
+    private ConfigStorage storage = ConfigStorage.HASH_MAP;
+    private volatile ConfigAccessStats accessStats;
+    private ConfigSchema schema;
+    private volatile ThreadLocal<ConfigNearCache> nearCache;
+    private volatile ConfigSecrets secrets;
+    private final List<ConfigListenerRegistration> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService listenerExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread worker = new Thread(runnable, "config-listener");
+        worker.setDaemon(true);
+        return worker;
+    });
+    private List<ConfigKey<?>> keys = Collections.emptyList();
+    private final EnumMap<ConfigLayer, Map<String, String>> layers = new EnumMap<>(ConfigLayer.class);
+    private volatile EnumMap<ConfigLayer, Map<String, String>> publishedLayers = new EnumMap<>(ConfigLayer.class);
+    private final ArrayDeque<ConfigVersion> history = new ArrayDeque<>();
+    private int historyLimit = 16;
+    private long historyEntryLimit = 2_000_000;
+    private long historyEntries;
+    private final ConcurrentHashMap<String, TenantOverlay> tenants = new ConcurrentHashMap<>();
+    private final ConfigInterpolator interpolator = new ConfigInterpolator();
+    private final Map<ConfigSource, Duration> sources = new LinkedHashMap<>();
+
+    private ConfigurationManager() {
+        snapshot = ConfigSnapshot.EMPTY;
+        for (ConfigLayer layer : ConfigLayer.values()) {
+            layers.put(layer, Collections.emptyMap());
+        }
+    }
+
+    public static ConfigurationManager getInstance() {
+        if (instance == null) {
+            synchronized (lock) {
+                if (instance == null) {
+                    instance = new ConfigurationManager();
+                }
+            }
+        }
+        return instance;
+    }
+
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void loadFromFile(String filename) throws IOException {
+        loadFromFile(filename, false);
+    }
+
+    public void loadFromFile(String filename, boolean parallel) throws IOException {
+        Path path = Paths.get(filename);
+        if (Files.exists(path)) {
+            Path binary = BinaryConfigSnapshot.pathFor(path);
+            Map<String, String> loaded = BinaryConfigSnapshot.open(binary, path);
+            if (loaded == null) {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                loaded = parallel
+                        ? ConfigFileParser.parseParallel(path, ForkJoinPool.commonPool())
+                        : ConfigFileParser.parse(path);
+                try {
+                    BinaryConfigSnapshot.write(binary, loaded, attributes);
+                } catch (IOException e) {
+                    System.err.println("Бинарлық снапшот жазылмады: " + e.getMessage());
+                }
+            }
+            installFileLayer(loaded);
+            replayJournal(path);
+            System.out.println("Конфигурация файлдан жүктелді: " + filename);
+        } else {
+            throw new IOException("Файл табылмады: " + filename);
+        }
+    }
+
+    public void loadFromFileLazily(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        if (!Files.exists(path)) {
+            throw new IOException("Файл табылмады: " + filename);
+        }
+        installFileLayer(ConfigFileParser.parseLazily(path));
+        replayJournal(path);
+        System.out.println("Конфигурация файлдан бөлімдер бойынша жүктелді: " + filename);
+    }
+
+    private void replayJournal(Path path) throws IOException {
+        Map<String, String> journaled = ConfigJournal.replay(ConfigJournal.pathFor(path));
+        if (!journaled.isEmpty()) {
+            applyOverrides(journaled);
+        }
+    }
+
+    public ConfigDelta reloadFromFile(String filename) throws IOException {
+        return replaceLayer(ConfigLayer.FILE, ConfigFileParser.parse(Paths.get(filename)));
+    }
+
+    public void startWatching(String filename, long debounceMillis) throws IOException {
+        startWatching(filename, debounceMillis, null);
+    }
+
+    public void startWatching(String filename, long debounceMillis, Consumer<ConfigDelta> onChange) throws IOException {
+        startWatching(filename, debounceMillis, onChange, null);
+    }
+
+    public void startWatching(String filename, long debounceMillis, Consumer<ConfigDelta> onChange,
+                              Consumer<Exception> onError) throws IOException {
+        synchronized (writeLock) {
+            stopWatching();
+            watcher = new ConfigWatcher(this, Paths.get(filename), debounceMillis, onChange, onError);
+        }
+    }
+
+    public void stopWatching() throws IOException {
+        synchronized (writeLock) {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+        }
+    }
+
+    public void loadFromDatabase(String connectionString) {
+        replaceLayer(ConfigLayer.DATABASE, new DatabaseConfigSource(connectionString).load());
+        System.out.println("Конфигурация дерекқордан жүктелді: " + connectionString);
+    }
+
+    public void loadDefault() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("app.name", "MyApplication");
+        settings.put("app.version", "1.0.0");
+        settings.put("app.theme", "light");
+        settings.put("app.language", "kk");
+        settings.put("max.users", "100");
+        settings.put("timeout", "30");
+        replaceLayer(ConfigLayer.DEFAULTS, settings);
+        System.out.println("Конфигурация әдепкі мәндермен жүктелді");
+    }
+
+    public void registerSource(ConfigSource source, Duration timeout) {
+        synchronized (writeLock) {
+            sources.put(source, timeout);
+        }
+    }
+
+    public void loadSources() throws IOException {
+        Map<ConfigSource, Duration> pendingSources;
+        synchronized (writeLock) {
+            pendingSources = new LinkedHashMap<>(sources);
+        }
+        if (pendingSources.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(pendingSources.size(), runnable -> {
+            Thread worker = new Thread(runnable, "config-source");
+            worker.setDaemon(true);
+            return worker;
+        });
+        Map<ConfigLayer, Map<String, String>> loaded = new EnumMap<>(ConfigLayer.class);
+        List<String> failures = new ArrayList<>();
+        List<Throwable> causes = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            Map<ConfigSource, Future<Map<String, String>>> futures = new LinkedHashMap<>();
+            for (ConfigSource source : pendingSources.keySet()) {
+                futures.put(source, executor.submit(source::load));
+            }
+            for (Map.Entry<ConfigSource, Future<Map<String, String>>> entry : futures.entrySet()) {
+                ConfigSource source = entry.getKey();
+                long remaining = pendingSources.get(source).toNanos() - (System.nanoTime() - start);
+                try {
+                    Map<String, String> settings = entry.getValue().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                    loaded.computeIfAbsent(source.getLayer(), layer -> new HashMap<>()).putAll(settings);
+                } catch (TimeoutException e) {
+                    entry.getValue().cancel(true);
+                    failures.add(source.getName() + " (уақыт бітті)");
+                } catch (ExecutionException e) {
+                    failures.add(source.getName() + " (" + e.getCause().getMessage() + ")");
+                    causes.add(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Конфигурация көздерін жүктеу үзілді");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        replaceLayers(loaded);
+        if (!failures.isEmpty()) {
+            IOException failure = new IOException("Кейбір конфигурация көздері жүктелмеді: " + String.join(", ", failures));
+            for (Throwable cause : causes) {
+                failure.addSuppressed(cause);
+            }
+            throw failure;
+        }
+    }
+
+    public Map<String, String> getLayer(ConfigLayer layer) {
+        synchronized (writeLock) {
+            return layers.get(layer);
+        }
+    }
+
+    public ConfigDelta clearLayer(ConfigLayer layer) {
+        return replaceLayer(layer, Collections.emptyMap());
+    }
+
+    public String getSetting(String key) {
+        return lookup(snapshot, key);
+    }
+
+    public String getSetting(String key, String defaultValue) {
+        String value = reveal(key, peek(snapshot, key));
+        ConfigAccessStats stats = accessStats;
+        if (stats != null) {
+            if (value == null) {
+                stats.recordDefault(key);
+            } else {
+                stats.recordHit(key);
+            }
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    public String getSettingOrElse(String key, Supplier<String> fallback) {
+        String value = reveal(key, peek(snapshot, key));
+        ConfigAccessStats stats = accessStats;
+        if (stats != null) {
+            if (value == null) {
+                stats.recordDefault(key);
+            } else {
+                stats.recordHit(key);
+            }
+        }
+        return value != null ? value : fallback.get();
+    }
+
+    public Optional<String> findSetting(String key) {
+        Optional<String> value = snapshot.findSetting(key);
+        if (secrets != null && value.isPresent() && ConfigSecrets.isEncrypted(value.get())) {
+            value = Optional.of(reveal(key, value.get()));
+        }
+        ConfigAccessStats stats = accessStats;
+        if (stats != null) {
+            if (value.isPresent()) {
+                stats.recordHit(key);
+            } else {
+                stats.recordMiss(key);
+            }
+        }
+        return value;
+    }
+
+    public void setSchema(ConfigSchema schema) {
+        synchronized (writeLock) {
+            if (schema != null && snapshot.isLoaded()) {
+                Map<String, String> settings = snapshot.getSettings();
+                schema.prime(snapshot, schema.validate(settings, settings::get));
+            }
+            this.schema = schema;
+        }
+    }
+
+    public ConfigSecrets enableSecrets(String keyFile, int maxCachedSecrets, Duration ttl) throws IOException {
+        ConfigSecrets next = new ConfigSecrets(ConfigSecrets.loadKey(Paths.get(keyFile)), maxCachedSecrets, ttl);
+        synchronized (writeLock) {
+            disableSecrets();
+            secrets = next;
+        }
+        return next;
+    }
+
+    public void disableSecrets() {
+        synchronized (writeLock) {
+            if (secrets != null) {
+                secrets.close();
+                secrets = null;
+            }
+        }
+    }
+
+    public void enableNearCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;
+        nearCache = ThreadLocal.withInitial(() -> new ConfigNearCache(Math.max(size, 1)));
+    }
+
+    public void disableNearCache() {
+        nearCache = null;
+    }
+
+    public ConfigAccessStats enableAccessStats(int maxKeys) {
+        ConfigAccessStats stats = new ConfigAccessStats(maxKeys);
+        ConfigAccessStats previous = accessStats;
+        accessStats = stats;
+        if (previous != null) {
+            previous.stopDump();
+        }
+        return stats;
+    }
+
+    public void disableAccessStats() {
+        ConfigAccessStats previous = accessStats;
+        accessStats = null;
+        if (previous != null) {
+            previous.stopDump();
+        }
+    }
+
+    public ConfigAccessStats getAccessStats() {
+        return accessStats;
+    }
+
+    public Map<String, String> getByPrefix(String prefix) {
+        ConfigSnapshot current = snapshot;
+        if (!current.isLoaded()) {
+            throw new IllegalStateException("Конфигурация жүктелмеген!");
+        }
+        return current.getByPrefix(prefix, false);
+    }
+
+    public Map<String, String> subtree(String section) {
+        ConfigSnapshot current = snapshot;
+        if (!current.isLoaded()) {
+            throw new IllegalStateException("Конфигурация жүктелмеген!");
+        }
+        return current.getByPrefix(section.endsWith(".") ? section : section + ".", true);
+    }
+
+    public int getInt(String key) {
+        return getTyped(key, Integer.class, Integer::valueOf);
+    }
+
+    public long getLong(String key) {
+        return getTyped(key, Long.class, Long::valueOf);
+    }
+
+    public boolean getBoolean(String key) {
+        return getTyped(key, Boolean.class, ConfigurationManager::parseBoolean);
+    }
+
+    public Duration getDuration(String key) {
+        return getTyped(key, Duration.class, ConfigurationManager::parseDuration);
+    }
+
+    public <E extends Enum<E>> E getEnum(String key, Class<E> enumType) {
+        return getTyped(key, enumType, raw -> Enum.valueOf(enumType, raw.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    public List<String> getList(String key) {
+        return getTyped(key, List.class, ConfigurationManager::parseList);
+    }
+
+    public ConfigKey<String> registerKey(String name) {
+        return registerKey(name, String.class, Function.identity());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ConfigKey<T> registerKey(String name, Class<T> type, Function<String, T> parser) {
+        synchronized (writeLock) {
+            for (ConfigKey<?> existing : keys) {
+                if (existing.getName().equals(name) && existing.getType() == type && existing.getParser() == parser) {
+                    return (ConfigKey<T>) existing;
+                }
+            }
+            ConfigKey<T> key = new ConfigKey<>(name, type, parser, keys.size());
+            List<ConfigKey<?>> next = new ArrayList<>(keys);
+            next.add(key);
+            keys = Collections.unmodifiableList(next);
+            republish(false);
+            return key;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(ConfigKey<T> key) {
+        ConfigSnapshot current = snapshot;
+        if (!current.hasSlot(key.getSlot())) {
+            return getTyped(key.getName(), key.getType(), key.getParser());
+        }
+        Object value = current.getSlot(key.getSlot());
+        if (value == null) {
+            return getTyped(key.getName(), key.getType(), key.getParser());
+        }
+        if (value instanceof ConfigSnapshot.SlotFailure) {
+            ConfigSnapshot.SlotFailure failure = (ConfigSnapshot.SlotFailure) value;
+            throw new IllegalArgumentException("Параметр мәні " + key.getType().getSimpleName() + " түріне сәйкес емес: " + key.getName() + " = " + failure.raw, failure.cause);
+        }
+        return (T) value;
+    }
+
+    public void setSetting(String key, String value) {
+        setSettings(Collections.singletonMap(key, value));
+    }
+
+    public void setSettings(Map<String, String> changes) {
+        synchronized (writeLock) {
+            if (!snapshot.isLoaded()) {
+                loadDefault();
+            }
+            applyOverrides(changes);
+            for (Map.Entry<String, String> entry : changes.entrySet()) {
+                if (journal != null) {
+                    journal.append(entry.getKey(), entry.getValue());
+                }
+                if (replicator != null) {
+                    replicator.recordLocal(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public ConfigReplicator enableReplication(String nodeId, int port, long antiEntropyIntervalMillis) throws IOException {
+        synchronized (writeLock) {
+            disableReplication();
+            replicator = new ConfigReplicator(nodeId, port, this::applyReplicated, writeLock);
+            for (Map.Entry<String, String> entry : layers.get(ConfigLayer.OVERRIDES).entrySet()) {
+                replicator.recordLocal(entry.getKey(), entry.getValue());
+            }
+            replicator.startAntiEntropy(antiEntropyIntervalMillis);
+            return replicator;
+        }
+    }
+
+    public void disableReplication() throws IOException {
+        synchronized (writeLock) {
+            if (replicator != null) {
+                replicator.close();
+                replicator = null;
+            }
+        }
+    }
+
+    private void applyReplicated(Map<String, String> changes) {
+        synchronized (writeLock) {
+            applyOverrides(changes);
+            if (journal != null) {
+                for (Map.Entry<String, String> entry : changes.entrySet()) {
+                    journal.append(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public void publishToSharedSegment(String path, int capacity) throws IOException {
+        synchronized (writeLock) {
+            checkWritable();
+            closeSharedSegment();
+            sharedSegment = SharedConfigSegment.createPublisher(Paths.get(path), capacity);
+            sharedSegment.write(snapshot.getSettings());
+        }
+    }
+
+    public void attachSharedSegment(String path) throws IOException {
+        synchronized (writeLock) {
+            SharedConfigSegment reader = SharedConfigSegment.openReader(Paths.get(path));
+            detachLazyNotifications();
+            closeSharedSegment();
+            if (sharedReader != null) {
+                sharedReader.close();
+            } else {
+                detached = snapshot;
+            }
+            sharedReader = reader;
+            publish(reader.new LiveView(), true);
+        }
+    }
+
+    public void detachSharedSegment() throws IOException {
+        synchronized (writeLock) {
+            if (sharedReader == null) {
+                return;
+            }
+            sharedReader.close();
+            sharedReader = null;
+            publish(detached.getSource(), detached.isLoaded());
+            detached = null;
+        }
+    }
+
+    private void checkWritable() {
+        if (sharedReader != null) {
+            throw new IllegalStateException("Конфигурация ортақ сегменттен тек оқу режимінде қосылған");
+        }
+    }
+
+    private void republish(boolean repack) {
+        if (sharedReader != null) {
+            publish(sharedReader.new LiveView(), true);
+        } else if (repack) {
+            detachLazyNotifications();
+            publish(new HashMap<>(snapshot.getSettings()), snapshot.isLoaded());
+        } else {
+            publish(snapshot.getSource(), snapshot.isLoaded());
+        }
+    }
+
+    private void detachLazyNotifications() {
+        if (notifyingLayer != null) {
+            notifyingLayer.loadAll();
+            notifyingLayer.setSectionListener(null);
+            notifyingLayer = null;
+        }
+    }
 
-    private ConfigurationManager() {
-        settings = new HashMap<>();
-        isLoaded = false;
+    private void closeSharedSegment() throws IOException {
+        if (sharedSegment != null) {
+            sharedSegment.close();
+            sharedSegment = null;
+        }
     }
 
-    public static ConfigurationManager getInstance() {
-        if (instance == null) {
-            synchronized (lock) {
-                if (instance == null) {
-                    instance = new ConfigurationManager();
+    public void setStorage(ConfigStorage storage) {
+        synchronized (writeLock) {
+            if (this.storage == storage) {
+                return;
+            }
+            this.storage = storage;
+            for (Map.Entry<ConfigLayer, Map<String, String>> entry : layers.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    entry.setValue(freeze(new HashMap<>(entry.getValue())));
                 }
             }
+            republish(true);
         }
-        return instance;
     }
 
-    public void loadFromFile(String filename) throws IOException {
-        Path path = Paths.get(filename);
-        if (Files.exists(path)) {
-            List<String> lines = Files.readAllLines(path);
-            settings.clear();
-            for (String line : lines) {
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    settings.put(parts[0].trim(), parts[1].trim());
+    public FeatureFlags featureFlags(String prefix) {
+        return new FeatureFlags(this, prefix);
+    }
+
+    public TenantOverlay forTenant(String tenantId) {
+        return tenants.computeIfAbsent(tenantId, id -> new TenantOverlay(id, this));
+    }
+
+    public void removeTenant(String tenantId) {
+        tenants.remove(tenantId);
+    }
+
+    public ConfigTransaction beginTransaction() {
+        return new ConfigTransaction(this, snapshot);
+    }
+
+    long commit(Map<String, String> staged) {
+        synchronized (writeLock) {
+            setSettings(staged);
+            return snapshot.getVersion();
+        }
+    }
+
+    public ConfigSnapshot getVersion(long version) {
+        synchronized (writeLock) {
+            for (ConfigVersion entry : history) {
+                if (entry.version == version) {
+                    return snapshotOf(entry);
                 }
             }
-            isLoaded = true;
-            System.out.println("Конфигурация файлдан жүктелді: " + filename);
-        } else {
-            throw new IOException("Файл табылмады: " + filename);
         }
+        throw new IllegalArgumentException("Нұсқа тарихта жоқ: " + version);
     }
 
-    public void loadFromDatabase(String connectionString) {
-        settings.put("db.host", "localhost");
-        settings.put("db.port", "5432");
-        settings.put("db.name", "mydb");
-        settings.put("db.user", "admin");
-        isLoaded = true;
-        System.out.println("Конфигурация дерекқордан жүктелді: " + connectionString);
+    public List<Long> getHistory() {
+        synchronized (writeLock) {
+            List<Long> versions = new ArrayList<>();
+            for (ConfigVersion entry : history) {
+                versions.add(entry.version);
+            }
+            return versions;
+        }
     }
 
-    public void loadDefault() {
-        settings.put("app.name", "MyApplication");
-        settings.put("app.version", "1.0.0");
-        settings.put("app.theme", "light");
-        settings.put("app.language", "kk");
-        settings.put("max.users", "100");
-        settings.put("timeout", "30");
-        isLoaded = true;
-        System.out.println("Конфигурация әдепкі мәндермен жүктелді");
+    public void setHistoryLimit(int historyLimit) {
+        synchronized (writeLock) {
+            this.historyLimit = Math.max(historyLimit, 1);
+            trimHistory();
+        }
     }
 
-    public String getSetting(String key) {
-        if (!isLoaded) {
-            throw new IllegalStateException("Конфигурация жүктелмеген!");
+    public void setHistoryEntryLimit(long historyEntryLimit) {
+        synchronized (writeLock) {
+            this.historyEntryLimit = Math.max(historyEntryLimit, 0);
+            trimHistory();
         }
-        String value = settings.get(key);
-        if (value == null) {
-            throw new IllegalArgumentException("Орнатылмаған параметр: " + key);
+    }
+
+    public long rollback(long version) {
+        synchronized (writeLock) {
+            ConfigVersion target = null;
+            for (ConfigVersion entry : history) {
+                if (entry.version == version) {
+                    target = entry;
+                }
+            }
+            if (target == null) {
+                throw new IllegalArgumentException("Нұсқа тарихта жоқ: " + version);
+            }
+            checkWritable();
+            detachLazyNotifications();
+            ConfigSnapshot restored = snapshotOf(target);
+            if (restored.isLive()) {
+                throw new IllegalArgumentException("Нұсқа ортақ сегменттің көрінісі болып табылады: " + version);
+            }
+            Map<String, String> before = snapshot.getSettings();
+            ConfigDelta overrides = ConfigDelta.between(layers.get(ConfigLayer.OVERRIDES), target.layers.get(ConfigLayer.OVERRIDES));
+            layers.putAll(target.layers);
+            interpolator.rebuild(restored.getSettings().keySet(), key -> resolve(layers, key));
+            publish(restored.getSource(), restored.isLoaded());
+            Map<String, String> changes = new HashMap<>(overrides.getAdded());
+            changes.putAll(overrides.getChanged());
+            for (String key : overrides.getRemoved()) {
+                changes.put(key, null);
+            }
+            for (Map.Entry<String, String> entry : changes.entrySet()) {
+                if (journal != null) {
+                    journal.append(entry.getKey(), entry.getValue());
+                }
+                if (replicator != null) {
+                    replicator.recordLocal(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!listeners.isEmpty()) {
+                notifyListeners(ConfigDelta.between(before, snapshot.getSettings()));
+            }
+            return snapshot.getVersion();
         }
-        return value;
     }
 
-    public String getSetting(String key, String defaultValue) {
-        if (!isLoaded) return defaultValue;
-        return settings.getOrDefault(key, defaultValue);
+    public void addKeyListener(String key, Consumer<ConfigDelta> listener) {
+        listeners.add(new ConfigListenerRegistration(key::equals, listener, listenerExecutor));
     }
 
-    public void setSetting(String key, String value) {
-        if (!isLoaded) {
-            loadDefault();
+    public void addPrefixListener(String prefix, Consumer<ConfigDelta> listener) {
+        listeners.add(new ConfigListenerRegistration(key -> key.startsWith(prefix), listener, listenerExecutor));
+    }
+
+    public void removeListener(Consumer<ConfigDelta> listener) {
+        listeners.removeIf(registration -> registration.getListener() == listener);
+    }
+
+    public void enableWriteBehind(String filename, long flushIntervalMillis, long compactionIntervalMillis) throws IOException {
+        synchronized (writeLock) {
+            disableWriteBehind();
+            journal = new ConfigJournal(Paths.get(filename), flushIntervalMillis, compactionIntervalMillis,
+                    () -> publishedLayers);
         }
-        settings.put(key, value);
     }
 
-    public void saveToFile(String filename) throws IOException {
-        List<String> lines = new ArrayList<>();
-        for (Map.Entry<String, String> entry : settings.entrySet()) {
-            lines.add(entry.getKey() + " = " + entry.getValue());
+    public void disableWriteBehind() throws IOException {
+        synchronized (writeLock) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
         }
-        Files.write(Paths.get(filename), lines);
+    }
+
+    public void saveToFile(String filename) throws IOException {
+        ConfigSnapshot current = snapshot;
+        writeSettings(Paths.get(filename), current.isLive()
+                ? current.getSettings() : rawSettings(publishedLayers, EnumSet.allOf(ConfigLayer.class)));
         System.out.println("Конфигурация файлға сақталды: " + filename);
     }
 
     public void printAllSettings() {
         System.out.println("\n=== Барлық конфигурациялар ===");
-        for (Map.Entry<String, String> entry : settings.entrySet()) {
+        for (Map.Entry<String, String> entry : snapshot.getSettings().entrySet()) {
             System.out.println(entry.getKey() + " = " + entry.getValue());
         }
         System.out.println("=============================\n");
     }
+
+    static void writeSettings(Path target, Map<String, String> settings) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            content.append(entry.getKey()).append(" = ").append(entry.getValue()).append(System.lineSeparator());
+        }
+        Path temp = target.toAbsolutePath().resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(content.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directory = FileChannel.open(temp.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (AccessDeniedException e) {
+            System.err.println("Каталог дискіге жазылмады: " + temp.getParent() + ": " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> rawSettings(EnumMap<ConfigLayer, Map<String, String>> layers, Set<ConfigLayer> included) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (Map.Entry<ConfigLayer, Map<String, String>> entry : layers.entrySet()) {
+            if (included.contains(entry.getKey())) {
+                settings.putAll(entry.getValue());
+            }
+        }
+        return settings;
+    }
+
+    private String lookup(ConfigSnapshot current, String key) {
+        String value = reveal(key, peek(current, key));
+        ConfigAccessStats stats = accessStats;
+        if (stats != null) {
+            if (value == null) {
+                stats.recordMiss(key);
+            } else {
+                stats.recordHit(key);
+            }
+        }
+        return value != null ? value : current.getSetting(key);
+    }
+
+    private String reveal(String key, String value) {
+        ConfigSecrets current = secrets;
+        return current != null && ConfigSecrets.isEncrypted(value) ? current.reveal(key, value) : value;
+    }
+
+    private String peek(ConfigSnapshot current, String key) {
+        ThreadLocal<ConfigNearCache> near = nearCache;
+        return near == null ? current.getSetting(key, null) : near.get().get(current, key);
+    }
+
+    private <T> T getTyped(String key, Class<?> type, Function<String, T> parser) {
+        ConfigSnapshot current = snapshot;
+        String raw = lookup(current, key);
+        boolean secret = secrets != null && ConfigSecrets.isEncrypted(current.getSetting(key, null));
+        try {
+            return secret ? parser.apply(raw) : current.getParsed(key, raw, type, parser);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Параметр мәні " + type.getSimpleName() + " түріне сәйкес емес: " + key + " = " + (secret ? "***" : raw), e);
+        }
+    }
+
+    static Boolean parseBoolean(String raw) {
+        String value = raw.trim();
+        if (value.equalsIgnoreCase("true")) return Boolean.TRUE;
+        if (value.equalsIgnoreCase("false")) return Boolean.FALSE;
+        throw new IllegalArgumentException(raw);
+    }
+
+    static Duration parseDuration(String raw) {
+        String value = raw.trim().toLowerCase(Locale.ROOT);
+        if (value.startsWith("p")) return Duration.parse(value.toUpperCase(Locale.ROOT));
+        if (value.endsWith("ms")) return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2).trim()));
+        if (value.endsWith("s")) return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1).trim()));
+        if (value.endsWith("m")) return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1).trim()));
+        if (value.endsWith("h")) return Duration.ofHours(Long.parseLong(value.substring(0, value.length() - 1).trim()));
+        if (value.endsWith("d")) return Duration.ofDays(Long.parseLong(value.substring(0, value.length() - 1).trim()));
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    private static List<String> parseList(String raw) {
+        if (raw.trim().isEmpty()) return Collections.emptyList();
+        List<String> items = new ArrayList<>();
+        for (String item : raw.split(",")) {
+            items.add(item.trim());
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private Map<String, String> freeze(Map<String, String> settings) {
+        if (settings instanceof CompactStringMap) {
+            return settings;
+        }
+        return storage == ConfigStorage.COMPACT
+                ? CompactStringMap.from(settings) : Collections.unmodifiableMap(settings);
+    }
+
+    private Map<String, String> applyDelta(Map<String, String> base, ConfigDelta delta) {
+        if (storage == ConfigStorage.COMPACT && base instanceof CompactStringMap) {
+            Map<String, String> upserts = new HashMap<>(delta.getChanged());
+            upserts.putAll(delta.getAdded());
+            return ((CompactStringMap) base).with(upserts, delta.getRemoved());
+        }
+        return delta.applyTo(base);
+    }
+
+    private void publish(Map<String, String> settings, boolean loaded) {
+        publish(settings, loaded, null);
+    }
+
+    private void publish(Map<String, String> settings, boolean loaded, ConfigDelta delta) {
+        if (storage == ConfigStorage.COMPACT && settings instanceof HashMap) {
+            settings = CompactStringMap.from(settings);
+        }
+        snapshot = new ConfigSnapshot(settings, loaded, snapshot, delta, keys, snapshot.getVersion() + 1);
+        if (sharedSegment != null) {
+            try {
+                sharedSegment.write(snapshot.getSettings());
+            } catch (IOException e) {
+                System.err.println("Ортақ сегментке жазу қатесі: " + e.getMessage());
+            }
+        }
+        EnumMap<ConfigLayer, Map<String, String>> previous = publishedLayers;
+        publishedLayers = new EnumMap<>(layers);
+        ConfigVersion version = new ConfigVersion(snapshot, publishedLayers, previous);
+        history.addLast(version);
+        historyEntries += version.retainedEntries;
+        trimHistory();
+    }
+
+    private void trimHistory() {
+        while (history.size() > historyLimit || (history.size() > 1 && historyEntries > historyEntryLimit)) {
+            historyEntries -= history.removeFirst().retainedEntries;
+        }
+    }
+
+    private ConfigSnapshot snapshotOf(ConfigVersion entry) {
+        ConfigSnapshot cached = entry.pinned != null ? entry.pinned : entry.snapshot.get();
+        if (cached != null) {
+            return cached;
+        }
+        Set<String> names = new HashSet<>();
+        for (Map<String, String> layer : entry.layers.values()) {
+            names.addAll(layer.keySet());
+        }
+        Map<String, String> settings = new ConfigInterpolator()
+                .resolve(names, key -> resolve(entry.layers, key), Collections.emptyMap());
+        settings.values().removeIf(Objects::isNull);
+        return new ConfigSnapshot(settings, entry.loaded, null, null, keys, entry.version);
+    }
+
+    private static final class ConfigVersion {
+        final long version;
+        final boolean loaded;
+        final Reference<ConfigSnapshot> snapshot;
+        final ConfigSnapshot pinned;
+        final EnumMap<ConfigLayer, Map<String, String>> layers;
+
+        final long retainedEntries;
+
+        ConfigVersion(ConfigSnapshot snapshot, EnumMap<ConfigLayer, Map<String, String>> layers,
+                      EnumMap<ConfigLayer, Map<String, String>> previous) {
+            long entries = 0;
+            for (Map.Entry<ConfigLayer, Map<String, String>> layer : layers.entrySet()) {
+                Map<String, String> contents = layer.getValue();
+                if (contents != previous.get(layer.getKey()) && !(contents instanceof LazyConfigMap)
+                        && !(contents instanceof BinaryConfigSnapshot.MappedConfigMap)) {
+                    entries += contents.size();
+                }
+            }
+            this.retainedEntries = entries;
+            this.version = snapshot.getVersion();
+            this.loaded = snapshot.isLoaded();
+            this.snapshot = new WeakReference<>(snapshot);
+            this.pinned = snapshot.isLive() ? snapshot : null;
+            this.layers = layers;
+        }
+    }
+
+    private void installFileLayer(Map<String, String> loaded) {
+        synchronized (writeLock) {
+            checkWritable();
+            detachLazyNotifications();
+            boolean onlyFile = true;
+            for (Map.Entry<ConfigLayer, Map<String, String>> entry : layers.entrySet()) {
+                if (entry.getKey() != ConfigLayer.FILE && !entry.getValue().isEmpty()) {
+                    onlyFile = false;
+                }
+            }
+            boolean raw = loaded instanceof BinaryConfigSnapshot.MappedConfigMap
+                    ? !((BinaryConfigSnapshot.MappedConfigMap) loaded).hasReferences()
+                    : loaded instanceof LazyConfigMap && !((LazyConfigMap) loaded).hasReferences();
+            if (onlyFile && raw && loaded instanceof LazyConfigMap) {
+                installLazyFileLayer((LazyConfigMap) loaded);
+            } else if (onlyFile && raw) {
+                Map<String, Object> converted = schema == null
+                        ? Collections.emptyMap() : schema.validate(loaded, loaded::get);
+                Map<String, String> before = snapshot.getSettings();
+                layers.put(ConfigLayer.FILE, loaded);
+                interpolator.rebuild(Collections.emptySet(), key -> null);
+                publish(loaded, true);
+                if (schema != null) {
+                    schema.prime(snapshot, converted);
+                }
+                if (!listeners.isEmpty()) {
+                    notifyListeners(ConfigDelta.between(before, loaded));
+                }
+            } else {
+                replaceLayer(ConfigLayer.FILE, loaded);
+            }
+        }
+    }
+
+    private void installLazyFileLayer(LazyConfigMap loaded) {
+        Map<String, Object> converted = Collections.emptyMap();
+        if (schema != null) {
+            Map<String, String> covered = new HashMap<>();
+            for (String section : loaded.getSections()) {
+                if (schema.covers(section)) {
+                    covered.putAll(loaded.loadSection(section));
+                }
+            }
+            converted = schema.validate(covered, loaded::get);
+        }
+        Map<String, String> before = snapshot.getSettings();
+        layers.put(ConfigLayer.FILE, loaded);
+        interpolator.rebuild(Collections.emptySet(), key -> null);
+        publish(loaded, true);
+        if (schema != null) {
+            schema.prime(snapshot, converted);
+        }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, String>> beforeBySection = new HashMap<>();
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            beforeBySection.computeIfAbsent(LazyConfigMap.sectionOf(entry.getKey()), name -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+        Set<String> removed = new HashSet<>();
+        for (Map.Entry<String, Map<String, String>> section : beforeBySection.entrySet()) {
+            if (!loaded.getSections().contains(section.getKey())) {
+                removed.addAll(section.getValue().keySet());
+            }
+        }
+        if (!removed.isEmpty()) {
+            notifyListeners(new ConfigDelta(Collections.emptyMap(), Collections.emptyMap(), removed));
+        }
+        notifyingLayer = loaded;
+        loaded.setSectionListener((section, values) -> notifyListeners(
+                ConfigDelta.between(beforeBySection.getOrDefault(section, Collections.emptyMap()), values)));
+    }
+
+    private ConfigDelta applyOverrides(Map<String, String> changes) {
+        synchronized (writeLock) {
+            Map<String, String> overrides = new HashMap<>(layers.get(ConfigLayer.OVERRIDES));
+            for (Map.Entry<String, String> entry : changes.entrySet()) {
+                if (entry.getValue() == null) {
+                    overrides.remove(entry.getKey());
+                } else {
+                    overrides.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return replaceLayer(ConfigLayer.OVERRIDES, overrides);
+        }
+    }
+
+    private void notifyListeners(ConfigDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        for (ConfigListenerRegistration registration : listeners) {
+            registration.offer(delta);
+        }
+    }
+
+    private ConfigDelta replaceLayer(ConfigLayer layer, Map<String, String> contents) {
+        return replaceLayers(Collections.singletonMap(layer, contents));
+    }
+
+    private ConfigDelta replaceLayers(Map<ConfigLayer, Map<String, String>> contents) {
+        if (contents.isEmpty()) {
+            return ConfigDelta.EMPTY;
+        }
+        synchronized (writeLock) {
+            checkWritable();
+            detachLazyNotifications();
+            EnumMap<ConfigLayer, Map<String, String>> next = new EnumMap<>(layers);
+            Set<String> affected = new HashSet<>();
+            for (Map.Entry<ConfigLayer, Map<String, String>> entry : contents.entrySet()) {
+                Map<String, String> previous = layers.get(entry.getKey());
+                ConfigDelta layerDelta = ConfigDelta.between(previous, entry.getValue());
+                if (!layerDelta.isEmpty()) {
+                    next.put(entry.getKey(), freeze(applyDelta(previous, layerDelta)));
+                    affected.addAll(layerDelta.getKeys());
+                }
+            }
+            if (affected.isEmpty() && snapshot.isLoaded()) {
+                return ConfigDelta.EMPTY;
+            }
+
+            Function<String, String> raw = key -> resolve(next, key);
+            Map<String, String> before = snapshot.getSettings();
+            Map<String, String> resolved = interpolator.resolve(interpolator.closure(affected), raw, before);
+            Map<String, Object> converted = schema == null
+                    ? Collections.emptyMap() : schema.validate(resolved, before::get);
+            layers.putAll(next);
+            interpolator.update(affected, raw);
+
+            Map<String, String> added = new HashMap<>();
+            Map<String, String> changed = new HashMap<>();
+            Set<String> removed = new HashSet<>();
+            for (Map.Entry<String, String> entry : resolved.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+                String old = before.get(key);
+                if (value == null) {
+                    if (old != null) removed.add(key);
+                } else if (old == null) {
+                    added.put(key, value);
+                } else if (!old.equals(value)) {
+                    changed.put(key, value);
+                }
+            }
+            ConfigDelta delta = added.isEmpty() && changed.isEmpty() && removed.isEmpty()
+                    ? ConfigDelta.EMPTY : new ConfigDelta(added, changed, removed);
+            publish(applyDelta(snapshot.getSource(), delta), true, delta);
+            if (schema != null) {
+                schema.prime(snapshot, converted);
+            }
+            notifyListeners(delta);
+            return delta;
+        }
+    }
+
+    private static String resolve(Map<ConfigLayer, Map<String, String>> layers, String key) {
+        ConfigLayer[] order = ConfigLayer.values();
+        for (int i = order.length - 1; i >= 0; i--) {
+            String value = layers.get(order[i]).get(key);
+            if (value != null) return value;
+        }
+        return null;
+    }
 }
 
 class Report {
@@ -377,6 +4737,331 @@ class Order implements Cloneable {
     }
 }
 
+class ConfigParseBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        long[] sizes = args.length > 0 ? new long[args.length] : new long[] {1_000_000, 10_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Long.parseLong(args[i]);
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Path warmup = generate(100_000);
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                ConfigFileParser.parse(warmup);
+                ConfigFileParser.parseParallel(warmup, pool);
+            }
+        } finally {
+            Files.deleteIfExists(warmup);
+        }
+
+        for (long lines : sizes) {
+            Path file = generate(lines);
+            try {
+                long sequentialNanos = Long.MAX_VALUE;
+                long parallelNanos = Long.MAX_VALUE;
+                for (int i = 0; i < ROUNDS; i++) {
+                    long start = System.nanoTime();
+                    ConfigFileParser.parse(file);
+                    sequentialNanos = Math.min(sequentialNanos, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    ConfigFileParser.parseParallel(file, pool);
+                    parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+                }
+                Map<String, String> sequential = ConfigFileParser.parse(file);
+                Map<String, String> parallel = ConfigFileParser.parseParallel(file, pool);
+                if (!sequential.equals(parallel)) {
+                    throw new IllegalStateException("Параллельді және тізбекті талдау нәтижелері әртүрлі: " + lines + " жол");
+                }
+                System.out.printf("%,d жол (%d МБ): тізбекті %d мс, параллельді %d мс (%d ағын), үдеу x%.2f%n",
+                        lines, Files.size(file) >> 20, sequentialNanos / 1_000_000, parallelNanos / 1_000_000,
+                        pool.getParallelism(), (double) sequentialNanos / parallelNanos);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Path generate(long lines) throws IOException {
+        Path file = Files.createTempFile("config-parse-", ".properties");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < lines; i++) {
+                if (i % 1000 == 0) {
+                    writer.write("# бөлім " + (i / 1000));
+                    writer.newLine();
+                }
+                writer.write("service" + (i % 1000) + ".node" + i + ".timeout = " + (i * 31 % 100_000) + "ms");
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
+
+class ConfigFootprintCheck {
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int count : sizes) {
+            Map<String, String> settings = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                settings.put("service" + (i % 1000) + ".node" + i + ".timeout", Integer.toString(i * 31 % 100_000) + "ms");
+            }
+            CompactStringMap compact = CompactStringMap.from(settings);
+            if (!compact.equals(settings)) {
+                throw new IllegalStateException("Ықшам қойма мазмұны сәйкес емес: " + count + " кілт");
+            }
+            long compactBytes = compact.footprintBytes();
+            long hashMapBytes = CompactStringMap.estimateHashMapFootprint(settings);
+            System.out.printf("%,d кілт: ықшам %,d байт, HashMap %,d байт, үнем %.1f%%%n",
+                    count, compactBytes, hashMapBytes, 100.0 * (hashMapBytes - compactBytes) / hashMapBytes);
+            if (compactBytes >= hashMapBytes) {
+                throw new IllegalStateException("Ықшам қойма HashMap-тен кіші емес: " + count + " кілт");
+            }
+        }
+    }
+}
+
+class ConfigAllocationCheck {
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        ConfigurationManager manager = ConfigurationManager.getInstance();
+        manager.setSetting("alloc.present", "value");
+        Supplier<String> fallback = () -> "fallback";
+        Map<String, Runnable> paths = new LinkedHashMap<>();
+        paths.put("findSetting hit", () -> manager.findSetting("alloc.present"));
+        paths.put("findSetting miss", () -> manager.findSetting("alloc.absent"));
+        paths.put("getSetting(key, default) hit", () -> manager.getSetting("alloc.present", "default"));
+        paths.put("getSetting(key, default) miss", () -> manager.getSetting("alloc.absent", "default"));
+        paths.put("getSettingOrElse hit", () -> manager.getSettingOrElse("alloc.present", fallback));
+        paths.put("getSettingOrElse miss", () -> manager.getSettingOrElse("alloc.absent", fallback));
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, Runnable> path : paths.entrySet()) {
+            Runnable read = path.getValue();
+            for (int i = 0; i < WARMUP; i++) {
+                read.run();
+            }
+            long allocated = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long before = threads.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    read.run();
+                }
+                allocated = Math.min(allocated, threads.getCurrentThreadAllocatedBytes() - before);
+            }
+            System.out.println(path.getKey() + ": " + allocated + " байт / " + ITERATIONS + " оқу");
+            if (allocated > 0) {
+                failures.add(path.getKey());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Оқу жолдары жад бөлді: " + failures);
+        }
+    }
+}
+
+class ConfigConcurrencyCheck {
+    private static final int KEYS = 200;
+
+    public static void main(String[] args) throws Exception {
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) * 1000 : 5000;
+        int readers = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ConfigurationManager manager = ConfigurationManager.getInstance();
+        manager.setSettings(generation(0));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                long lastGeneration = -1;
+                long count = 0;
+                while (running.get()) {
+                    try {
+                        ConfigSnapshot snapshot = manager.getSnapshot();
+                        String expected = snapshot.getSetting("stress.generation");
+                        for (int i = 0; i < KEYS; i++) {
+                            if (!expected.equals(snapshot.getSetting("stress.k" + i))) {
+                                failures.add("Аралас снапшот: stress.k" + i + " != " + expected);
+                            }
+                        }
+                        long generation = Long.parseLong(manager.getSetting("stress.k" + (count % KEYS)));
+                        if (generation < lastGeneration) {
+                            failures.add("Ұрпақ кері кетті: " + generation + " < " + lastGeneration);
+                        }
+                        lastGeneration = generation;
+                        count++;
+                    } catch (RuntimeException e) {
+                        failures.add("Оқу қатесі: " + e);
+                    }
+                }
+                reads.addAndGet(count);
+            }, "config-reader-" + r));
+        }
+        Thread writer = new Thread(() -> {
+            long generation = 0;
+            while (running.get()) {
+                try {
+                    manager.setSettings(generation(++generation));
+                    if (generation % 100 == 0) {
+                        manager.setStorage(generation % 200 == 0 ? ConfigStorage.HASH_MAP : ConfigStorage.COMPACT);
+                    }
+                } catch (RuntimeException e) {
+                    failures.add("Жазу қатесі: " + e);
+                }
+            }
+            writes.set(generation);
+        }, "config-writer");
+        threads.add(writer);
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(durationMillis);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        manager.setStorage(ConfigStorage.HASH_MAP);
+
+        System.out.println("Оқырмандар: " + readers + ", оқу: " + reads.get() + ", жазу: " + writes.get()
+                + ", қателер: " + failures.size());
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Параллельді тексеру сәтсіз: " + failures.peek());
+        }
+    }
+
+    private static Map<String, String> generation(long generation) {
+        Map<String, String> settings = new HashMap<>();
+        String value = Long.toString(generation);
+        for (int i = 0; i < KEYS; i++) {
+            settings.put("stress.k" + i, value);
+        }
+        settings.put("stress.generation", value);
+        return settings;
+    }
+}
+
+class ConfigReplicationCheck {
+    private static final int NODES = 4;
+    private static final int KEYS = 50;
+
+    public static void main(String[] args) throws Exception {
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) * 1000 : 3000;
+        ConfigurationManager manager = ConfigurationManager.getInstance();
+        List<ConfigReplicator> nodes = new ArrayList<>();
+        List<Map<String, String>> applied = new ArrayList<>();
+        nodes.add(manager.enableReplication("node-0", 0, 50));
+        applied.add(null);
+        for (int n = 1; n < NODES; n++) {
+            Map<String, String> local = new ConcurrentHashMap<>();
+            ConfigReplicator node = new ConfigReplicator("node-" + n, 0, changes -> changes.forEach((key, value) -> {
+                if (value == null) {
+                    local.remove(key);
+                } else {
+                    local.put(key, value);
+                }
+            }));
+            node.startAntiEntropy(50);
+            nodes.add(node);
+            applied.add(local);
+        }
+        for (int n = 0; n < NODES; n++) {
+            nodes.get(n).addPeer(nodes.get((n + 1) % NODES).getAddress());
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int n = 0; n < NODES; n++) {
+            int index = n;
+            writers.add(new Thread(() -> {
+                Random random = new Random(index);
+                int sequence = 0;
+                while (running.get()) {
+                    String key = "sync.k" + random.nextInt(KEYS);
+                    String value = random.nextInt(5) == 0 ? null : "node-" + index + "-" + sequence++;
+                    try {
+                        if (index == 0) {
+                            manager.setSetting(key, value);
+                        } else {
+                            synchronized (nodes.get(index)) {
+                                nodes.get(index).recordLocal(key, value);
+                                if (value == null) {
+                                    applied.get(index).remove(key);
+                                } else {
+                                    applied.get(index).put(key, value);
+                                }
+                            }
+                        }
+                        Thread.sleep(random.nextInt(5));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (RuntimeException e) {
+                        failures.add("Жазу қатесі node-" + index + ": " + e);
+                    }
+                }
+            }, "config-replication-writer-" + n));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        Thread.sleep(durationMillis);
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        String divergence;
+        while ((divergence = divergence(manager, nodes, applied)) != null && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        for (int n = 1; n < NODES; n++) {
+            nodes.get(n).close();
+        }
+        manager.disableReplication();
+
+        System.out.println("Түйіндер: " + NODES + ", кілттер: " + nodes.get(0).getAll().size()
+                + ", қателер: " + failures.size() + ", сәйкессіздік: " + (divergence == null ? "жоқ" : divergence));
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Репликацияны тексеру сәтсіз: " + failures.peek());
+        }
+        if (divergence != null) {
+            throw new IllegalStateException("Түйіндер жинақталмады: " + divergence);
+        }
+    }
+
+    private static String divergence(ConfigurationManager manager, List<ConfigReplicator> nodes,
+                                     List<Map<String, String>> applied) {
+        Map<String, String> expected = nodes.get(0).getAll();
+        if (!expected.equals(manager.getByPrefix("sync."))) {
+            return "node-0 менеджері";
+        }
+        for (int n = 1; n < nodes.size(); n++) {
+            if (!expected.equals(nodes.get(n).getAll())) {
+                return "node-" + n + " жазбалары";
+            }
+            if (!expected.equals(applied.get(n))) {
+                return "node-" + n + " қолданылған мәндері";
+            }
+        }
+        return null;
+    }
+}
+
 public class Main {
     public static void main(String[] args) {
         System.out.println("========================================");